@@ -0,0 +1,90 @@
+package net.termer.rtflc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.runtime.RtflRuntime;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Benchmarks executing loops, recursion and function calls, with and without compiling functions
+ * @author termer
+ * @since 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InterpreterBenchmarks {
+	// Functions are defined once, so compiled functions stay compiled between invocations
+	private static final String FUNCTIONS =
+		"func fib(n) {\n" +
+		"\tif [n < 2] {\n" +
+		"\t\treturn n\n" +
+		"\t}\n" +
+		"\treturn add(fib(sub(n, 1)), fib(sub(n, 2)))\n" +
+		"}\n" +
+		"func twice(x) {\n" +
+		"\treturn add(x, x)\n" +
+		"}\n";
+	
+	/**
+	 * The compile threshold of the runtime, 0 to only interpret
+	 */
+	@Param({"0", "1000"})
+	public int compileThreshold;
+	
+	private RtflRuntime _runtime = null;
+	private RtflInstruction[] _loop = null;
+	private RtflInstruction[] _recursion = null;
+	private RtflInstruction[] _calls = null;
+	
+	@Setup
+	public void setup() throws Exception {
+		_runtime = new RtflRuntime()
+			.importStandard()
+			.compileThreshold(compileThreshold);
+		_runtime.execute(FUNCTIONS);
+		
+		_loop = Scripts.parse(
+			"local i = 0\n" +
+			"local sum = 0\n" +
+			"while [i < 10000] {\n" +
+			"\tsum = add(sum, i)\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"return sum\n"
+		);
+		_recursion = Scripts.parse("return fib(20)\n");
+		_calls = Scripts.parse(
+			"local i = 0\n" +
+			"local sum = 0\n" +
+			"while [i < 10000] {\n" +
+			"\tsum = add(sum, twice(i))\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"return sum\n"
+		);
+	}
+	
+	@Benchmark
+	public RtflType loop() throws Exception {
+		return _runtime.execute(_loop);
+	}
+	@Benchmark
+	public RtflType recursion() throws Exception {
+		return _runtime.execute(_recursion);
+	}
+	@Benchmark
+	public RtflType functionCalls() throws Exception {
+		return _runtime.execute(_calls);
+	}
+}
@@ -0,0 +1,54 @@
+package net.termer.rtflc.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.termer.rtflc.producers.BytecodeInstructionProducer;
+import net.termer.rtflc.producers.SourcecodeInstructionProducer;
+
+/**
+ * Benchmarks parsing scripts and loading bytecode into instructions
+ * @author termer
+ * @since 1.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProducerBenchmarks {
+	@Param({"small", "large"})
+	public String size;
+	
+	private byte[] _source = null;
+	private byte[] _bytecode = null;
+	
+	@Setup
+	public void setup() throws Exception {
+		String script = size.equals("small") ? Scripts.SMALL : Scripts.large(200);
+		
+		_source = script.getBytes(StandardCharsets.UTF_8);
+		_bytecode = Scripts.compile(script);
+	}
+	
+	@Benchmark
+	public int parseSource() throws Exception {
+		Scripts.Collector col = new Scripts.Collector();
+		SourcecodeInstructionProducer.produce("benchmark", new ByteArrayInputStream(_source), col);
+		return col.instructions.size();
+	}
+	@Benchmark
+	public int loadBytecode() throws Exception {
+		Scripts.Collector col = new Scripts.Collector();
+		BytecodeInstructionProducer.produce("benchmark", new ByteArrayInputStream(_bytecode), col, true);
+		return col.instructions.size();
+	}
+}
@@ -0,0 +1,91 @@
+package net.termer.rtflc.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.runtime.RtflRuntime;
+import net.termer.rtflc.runtime.Scope;
+import net.termer.rtflc.type.IntType;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Benchmarks reading and assigning local and global variables
+ * @author termer
+ * @since 1.3
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScopeBenchmarks {
+	// How many scopes deep variables are accessed from
+	private static final int DEPTH = 8;
+	
+	private final String _local = "local_var";
+	private final String _global = "global_var";
+	
+	private RtflRuntime _runtime = null;
+	// Scope the local variable is defined in
+	private Scope _top = null;
+	// Scope DEPTH levels below the top scope
+	private Scope _nested = null;
+	private RtflInstruction[] _script = null;
+	private int _counter = 0;
+	
+	@Setup
+	public void setup() throws Exception {
+		_runtime = new RtflRuntime().importStandard();
+		_runtime.execute("def global_var = 0");
+		
+		_top = new Scope(_runtime, new HashMap<String, Integer>(), null);
+		_top.createLocalVar(_local, IntType.of(0));
+		
+		_nested = _top;
+		for(int i = 0; i < DEPTH; i++)
+			_nested = _nested.descend(null);
+		
+		_script = Scripts.parse(
+			"local a = 1\n" +
+			"local b = 2\n" +
+			"local i = 0\n" +
+			"while [i < 1000] {\n" +
+			"\ta = b\n" +
+			"\tb = a\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"return b\n"
+		);
+	}
+	
+	@Benchmark
+	public RtflType readLocal() throws Exception {
+		return _top.varValue(_local);
+	}
+	@Benchmark
+	public RtflType readNestedLocal() throws Exception {
+		return _nested.varValue(_local);
+	}
+	@Benchmark
+	public RtflType readGlobal() throws Exception {
+		return _nested.varValue(_global);
+	}
+	@Benchmark
+	public boolean assignLocal() throws Exception {
+		return _nested.assignVar(_local, IntType.of(_counter++ & 127));
+	}
+	@Benchmark
+	public boolean assignGlobal() throws Exception {
+		return _nested.assignVar(_global, IntType.of(_counter++ & 127));
+	}
+	@Benchmark
+	public RtflType scriptAccess() throws Exception {
+		return _runtime.execute(_script);
+	}
+}
@@ -0,0 +1,119 @@
+package net.termer.rtflc.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import net.termer.rtflc.consumers.CompilerInstructionConsumer;
+import net.termer.rtflc.consumers.InstructionConsumer;
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.producers.ProducerException;
+import net.termer.rtflc.producers.SourcecodeInstructionProducer;
+import net.termer.rtflc.runtime.RuntimeException;
+
+/**
+ * Scripts and helpers shared by the benchmarks
+ * @author termer
+ * @since 1.3
+ */
+class Scripts {
+	/**
+	 * A short script touching most kinds of instructions
+	 */
+	static final String SMALL =
+		"func greet(name) {\n" +
+		"\treturn concat(\"Hello, \", name)\n" +
+		"}\n" +
+		"local names = array(\"a\", \"b\", \"c\")\n" +
+		"local i = 0\n" +
+		"while [i < array_length(names)] {\n" +
+		"\tif [i = 1] {\n" +
+		"\t\tgreet(names[i])\n" +
+		"\t}\n" +
+		"\ti = add(i, 1)\n" +
+		"}\n" +
+		"local m = map()\n" +
+		"m->count = i\n" +
+		"error e {\n" +
+		"\tthrow(\"failed\")\n" +
+		"}\n";
+	
+	private Scripts() {}
+	
+	/**
+	 * Returns a long script made up of the specified amount of functions, each with its own loops, conditions and calls
+	 * @param functions The amount of functions
+	 * @return The script
+	 */
+	static String large(int functions) {
+		StringBuilder sb = new StringBuilder();
+		
+		for(int i = 0; i < functions; i++) {
+			sb.append("func work").append(i).append("(a, b) {\n")
+				.append("\tlocal total = 0\n")
+				.append("\tlocal items = array()\n")
+				.append("\twhile [total < a] {\n")
+				.append("\t\tarray_add(items, mul(total, b))\n")
+				.append("\t\tif [total > 10] {\n")
+				.append("\t\t\ttotal = add(total, 2)\n")
+				.append("\t\t}\n")
+				.append("\t\tif [total < 11] {\n")
+				.append("\t\t\ttotal = add(total, 1)\n")
+				.append("\t\t}\n")
+				.append("\t}\n")
+				.append("\tlocal info = map()\n")
+				.append("\tinfo->name = \"work").append(i).append("\"\n")
+				.append("\tinfo->size = array_length(items)\n")
+				.append("\treturn concat(info->name, \" \", to_string(info->size))\n")
+				.append("}\n")
+				.append("def result").append(i).append(" = work").append(i).append("(").append(i % 20).append(", 3)\n");
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Parses a script into instructions
+	 * @param script The script
+	 * @return The script's instructions
+	 * @throws IOException If reading the script fails
+	 * @throws ProducerException If parsing the script fails
+	 * @throws RuntimeException If the consumer fails
+	 */
+	static RtflInstruction[] parse(String script) throws IOException, ProducerException, RuntimeException {
+		Collector col = new Collector();
+		SourcecodeInstructionProducer.produce("benchmark", new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), col);
+		return col.instructions.toArray(new RtflInstruction[0]);
+	}
+	/**
+	 * Compiles a script into bytecode, without the metadata written at the start of compiled files
+	 * @param script The script
+	 * @return The script's bytecode
+	 * @throws IOException If compiling the script fails
+	 * @throws ProducerException If parsing the script fails
+	 * @throws RuntimeException If the consumer fails
+	 */
+	static byte[] compile(String script) throws IOException, ProducerException, RuntimeException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SourcecodeInstructionProducer.produce("benchmark", new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), new CompilerInstructionConsumer(out, true));
+		return out.toByteArray();
+	}
+	
+	/**
+	 * InstructionConsumer that keeps the instructions it takes in
+	 * @author termer
+	 * @since 1.3
+	 */
+	static class Collector implements InstructionConsumer {
+		final ArrayList<RtflInstruction> instructions = new ArrayList<RtflInstruction>();
+		
+		public void consume(RtflInstruction instruction) {
+			instructions.add(instruction);
+		}
+		public void finish() {
+			// Nothing to do
+		}
+	}
+}
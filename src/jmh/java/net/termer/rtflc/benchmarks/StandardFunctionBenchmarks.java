@@ -0,0 +1,116 @@
+package net.termer.rtflc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.runtime.RtflRuntime;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Benchmarks the array, map and JSON functions of the standard library, and Java interop functions
+ * @author termer
+ * @since 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StandardFunctionBenchmarks {
+	private RtflRuntime _runtime = null;
+	private RtflInstruction[] _arrays = null;
+	private RtflInstruction[] _maps = null;
+	private RtflInstruction[] _json = null;
+	private RtflInstruction[] _interop = null;
+	
+	@Setup
+	public void setup() throws Exception {
+		_runtime = new RtflRuntime()
+			.importStandard()
+			.importJavaInterop();
+		
+		_arrays = Scripts.parse(
+			"local arr = array()\n" +
+			"local i = 0\n" +
+			"while [i < 1000] {\n" +
+			"\tarray_add(arr, i)\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"i = 0\n" +
+			"local sum = 0\n" +
+			"while [i < array_length(arr)] {\n" +
+			"\tsum = add(sum, array_get(arr, i))\n" +
+			"\tarray_set(arr, i, sum)\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"array_contains(arr, -1)\n" +
+			"return sum\n"
+		);
+		_maps = Scripts.parse(
+			"local m = map()\n" +
+			"local i = 0\n" +
+			"while [i < 1000] {\n" +
+			"\tmap_put(m, to_string(i), i)\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"i = 0\n" +
+			"local sum = 0\n" +
+			"while [i < 1000] {\n" +
+			"\tlocal key = to_string(i)\n" +
+			"\tif [map_contains_key(m, key)] {\n" +
+			"\t\tsum = add(sum, map_get(m, key))\n" +
+			"\t}\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"map_keys(m)\n" +
+			"map_values(m)\n" +
+			"return sum\n"
+		);
+		_json = Scripts.parse(
+			"local m = map()\n" +
+			"local list = array()\n" +
+			"local i = 0\n" +
+			"while [i < 100] {\n" +
+			"\tlocal entry = map()\n" +
+			"\tentry->id = i\n" +
+			"\tentry->name = concat(\"entry \", to_string(i))\n" +
+			"\tarray_add(list, entry)\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"m->entries = list\n" +
+			"return from_json(to_json(m))\n"
+		);
+		_interop = Scripts.parse(
+			"local sb = java(\"java.lang.StringBuilder\", array())\n" +
+			"local i = 0\n" +
+			"while [i < 100] {\n" +
+			"\tjmethod(sb, \"append\", array(\"x\"))\n" +
+			"\ti = add(i, 1)\n" +
+			"}\n" +
+			"return jmethod(sb, \"length\", array())\n"
+		);
+	}
+	
+	@Benchmark
+	public RtflType arrays() throws Exception {
+		return _runtime.execute(_arrays);
+	}
+	@Benchmark
+	public RtflType maps() throws Exception {
+		return _runtime.execute(_maps);
+	}
+	@Benchmark
+	public RtflType jsonRoundTrip() throws Exception {
+		return _runtime.execute(_json);
+	}
+	@Benchmark
+	public RtflType javaInterop() throws Exception {
+		return _runtime.execute(_interop);
+	}
+}
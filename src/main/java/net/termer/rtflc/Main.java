@@ -3,23 +3,22 @@ package net.termer.rtflc;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import net.termer.rtflc.type.ArrayType;
-import net.termer.rtflc.type.RtflType;
 import net.termer.rtflc.type.StringType;
 import net.termer.rtflc.utils.ArgParser;
 import net.termer.rtflc.compiler.CompilerOptions;
 import net.termer.rtflc.compiler.RtflCompiler;
 import net.termer.rtflc.producers.ProducerException;
+import net.termer.rtflc.runtime.AsyncScheduler;
+import net.termer.rtflc.runtime.Profiler;
 import net.termer.rtflc.runtime.RtflRuntime;
 import net.termer.rtflc.runtime.RuntimeException;
 
 public class Main {
 	public static final double RTFLC_VERSION = 1.3;
-	public static final double RTFL_VERSION = 1.4;
+	public static final double RTFL_VERSION = 1.5;
 	
-	@SuppressWarnings("unchecked")
 	public static void main(String[] args) {
 		ArgParser arg = new ArgParser(args);
 		
@@ -38,8 +37,11 @@ public class Main {
 				"-p, --package-literal-loads     packages all scripts or binaries that are referenced with `load()` calls into the compiled binary output instead of referencing them\n" + 
 				"-e, --package-literal-requires  packages all scripts or binaries that are references with `require()` calls into the compiled binary output instead of referencing them\n" + 
 				"-n, --preserve-line-numbers     preserves line numbers for instructions in compiled binaries for debugging purposes\n" +
+				"-o, --optimize                  folds constant expressions and removes blocks that can never run when compiling or executing\n" +
 				"-i, --disable-interop           disables Java/Rtfl interop functions\n" + 
 				"--out=FILENAME                  specifies the path to output the compiled binary to\n" + 
+				"--async-threads=COUNT           runs async blocks on a pool of COUNT threads instead of starting a new thread for each one\n" + 
+				"--profile=FILENAME              samples the Rtfl functions the script runs and writes them to FILENAME as collapsed stacks for flame graph tools\n" + 
 				"\n" + 
 				"Examples:\n" + 
 				"  java -jar "+jarName+" script.rtfl --time  Executes script.rtfl and outputs the time it took to execute it\n" + 
@@ -61,6 +63,7 @@ public class Main {
 							.packageLiteralLoads(arg.option("package-literal-loads") || arg.flag('p'))
 							.packageLiteralRequires(arg.option("package-literal-requires") || arg.flag('e'))
 							.preserveLineNumbers(arg.option("preserve-line-numbers") || arg.flag('n'))
+							.optimize(arg.option("optimize") || arg.flag('o'))
 					);
 					
 					String outPath = file.getPath();
@@ -99,10 +102,33 @@ public class Main {
 					if(!arg.option("disable-interop") && !arg.flag('i'))
 						rt.importJavaInterop();
 					
+					// Optimize files as they are loaded if specified
+					if(arg.option("optimize") || arg.flag('o'))
+						rt.optimize(true);
+					
+					// Run async blocks on a pool if specified
+					if(arg.optionString("async-threads") != null)
+						rt.asyncScheduler(AsyncScheduler.pool(arg.optionInt("async-threads"), 0));
+					
+					// Profile the script if specified, samples are written when the JVM exits so async blocks and exit() calls are included
+					if(arg.optionString("profile") != null) {
+						File profileFile = new File(arg.optionString("profile"));
+						Profiler profiler = new Profiler().start();
+						rt.profiler(profiler);
+						
+						Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+							try {
+								profiler.stop().writeCollapsed(profileFile);
+							} catch(IOException e) {
+								System.err.println("Failed to write profile: "+e.getMessage());
+							}
+						}));
+					}
+					
 					// Make launch arguments available to runtime
 					ArrayType rtflArgs = new ArrayType();
 					for(int i = 1; i < arg.arguments().length; i++)
-						((ArrayList<RtflType>) rtflArgs.value()).add(new StringType(arg.arguments()[i]));
+						rtflArgs.add(new StringType(arg.arguments()[i]));
 					rt.globalVarables().put("args", rtflArgs);
 					
 					try {
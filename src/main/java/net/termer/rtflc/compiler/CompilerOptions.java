@@ -11,6 +11,7 @@ public class CompilerOptions {
 	private boolean packageLiteralLoads = false;
 	private boolean packageLiteralRequires = false;
 	private boolean preserveLineNumbers = true;
+	private boolean optimize = false;
 	
 	/**
 	 * Sets whether the compiler should compile all files referenced by loads with literal paths in them.
@@ -114,4 +115,26 @@ public class CompilerOptions {
 	public boolean preserveLineNumbers() {
 		return preserveLineNumbers;
 	}
-}
+	
+	/**
+	 * Sets whether the compiler should optimize compiled scripts.
+	 * Example: Compiler reading `var x = add(60, 1000)` in the source would compile it as `var x = 1060`, and `if [1 > 2] {` blocks would be left out entirely.
+	 * Binaries compiled with this option assume that standard functions will not be replaced by the program running them.
+	 * @param set The value to set this option
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public CompilerOptions optimize(boolean set) {
+		optimize = set;
+		return this;
+	}
+	/**
+	 * Returns whether the compiler should optimize compiled scripts.
+	 * Example: Compiler reading `var x = add(60, 1000)` in the source would compile it as `var x = 1060`, and `if [1 > 2] {` blocks would be left out entirely.
+	 * @return The value of this option
+	 * @since 1.3
+	 */
+	public boolean optimize() {
+		return optimize;
+	}
+}
\ No newline at end of file
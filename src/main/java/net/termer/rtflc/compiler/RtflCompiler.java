@@ -11,9 +11,11 @@ import java.util.ArrayList;
 
 import net.termer.rtflc.consumers.CompilerInstructionConsumer;
 import net.termer.rtflc.consumers.InstructionConsumer;
+import net.termer.rtflc.consumers.OptimizerInstructionConsumer;
 import net.termer.rtflc.instructions.AscendScopeInstruction;
 import net.termer.rtflc.instructions.DescendScopeInstruction;
 import net.termer.rtflc.instructions.FuncCallInstruction;
+import net.termer.rtflc.instructions.Opcodes;
 import net.termer.rtflc.instructions.RtflInstruction;
 import net.termer.rtflc.producers.BytecodeInstructionProducer;
 import net.termer.rtflc.producers.ProducerException;
@@ -31,7 +33,7 @@ import net.termer.rtflc.type.StringType;
  */
 public class RtflCompiler {
 	public static final int COMPILER_VERSION = 0;
-	public static final int RTFL_VERSION = 4;
+	public static final int RTFL_VERSION = 5;
 	
 	private final CompilerOptions _options;
 	private ArrayList<String> _requires = new ArrayList<String>();
@@ -103,7 +105,11 @@ public class RtflCompiler {
 		);
 		
 		// Compiler consumer
-		CompilerConsumer comp = new CompilerConsumer(this, cons, out);
+		InstructionConsumer comp = new CompilerConsumer(this, cons, out);
+		
+		// Optimize instructions before compiling them if specified in options
+		if(_options.optimize())
+			comp = new OptimizerInstructionConsumer(comp);
 		
 		// Print message
 		System.out.println((writeMetadata ? "Compiling " : "Packaging ")+file.getPath()+"...");
@@ -254,7 +260,7 @@ public class RtflCompiler {
 	private void swapSource(String source, RtflCompiler compiler, OutputStream out) throws IOException {
 		if(compiler.options().preserveLineNumbers())
 			out.write(new byte[] {0,0});
-		out.write(new byte[] {13, (byte) source.length()});
+		out.write(new byte[] {Opcodes.SWAP_SOURCE, (byte) source.length()});
 		out.write(source.getBytes(StandardCharsets.UTF_8));
 	}
 }
\ No newline at end of file
@@ -42,48 +42,51 @@ public class CompilerInstructionConsumer implements InstructionConsumer {
 		if(writeLns)
 			writeShort((short) inst.originLine());
 		
-		if(inst instanceof VarDefInstruction) {
+		int opcode = inst.opcode();
+		// Write opcode
+		out.write(opcode);
+		
+		switch(opcode) {
+		case Opcodes.VAR_DEF: {
 			VarDefInstruction ins = (VarDefInstruction) inst;
-			// Write opcode
-			out.write(0);
 			// Var name length
 			out.write((byte) ins.variableName().length());
 			// Var name
 			writeStr(ins.variableName());
 			// Write value
 			writeVal(ins.variableValue());
-		} else if(inst instanceof VarLocalDefInstruction) {
+			break;
+		}
+		case Opcodes.VAR_LOCAL_DEF: {
 			VarLocalDefInstruction ins = (VarLocalDefInstruction) inst;
-			// Write opcode
-			out.write(1);
 			// Var name length
 			out.write((byte) ins.variableName().length());
 			// Var name
 			writeStr(ins.variableName());
 			// Write value
 			writeVal(ins.variableValue());
-		} else if(inst instanceof VarAssignInstruction) {
+			break;
+		}
+		case Opcodes.VAR_ASSIGN: {
 			VarAssignInstruction ins = (VarAssignInstruction) inst;
-			// Write opcode
-			out.write(2);
 			// Var name length
 			out.write((byte) ins.variableName().length());
 			// Var name
 			writeStr(ins.variableName());
 			// Write value
 			writeVal(ins.assignValue());
-		} else if(inst instanceof VarUndefInstruction) {
+			break;
+		}
+		case Opcodes.VAR_UNDEF: {
 			VarUndefInstruction ins = (VarUndefInstruction) inst;
-			// Write opcode
-			out.write(3);
 			// Var name length
 			out.write((byte) ins.variableName().length());
 			// Var name
 			writeStr(ins.variableName());
-		} else if(inst instanceof FuncCallInstruction) {
+			break;
+		}
+		case Opcodes.FUNC_CALL: {
 			FuncCallInstruction ins = (FuncCallInstruction) inst;
-			// Write opcode
-			out.write(4);
 			// Write function name length
 			out.write(ins.functionName().length());
 			// Write function name
@@ -93,16 +96,16 @@ public class CompilerInstructionConsumer implements InstructionConsumer {
 			// Write arguments
 			for(RtflType arg : ins.functionArguments())
 				writeVal(arg);
-		} else if(inst instanceof ReturnInstruction) {
+			break;
+		}
+		case Opcodes.RETURN: {
 			ReturnInstruction ins = (ReturnInstruction) inst;
-			// Write opcode
-			out.write(5);
 			// Write return value
 			writeVal(ins.returnValue());
-		} else if(inst instanceof IfInstruction) {
+			break;
+		}
+		case Opcodes.IF: {
 			IfInstruction ins = (IfInstruction) inst;
-			// Write opcode
-			out.write(6);
 			// Check condition to make sure it's legal
 			RtflType cond = ins.condition();
 			if(cond instanceof NumberType || cond instanceof AssignmentType) {
@@ -110,10 +113,10 @@ public class CompilerInstructionConsumer implements InstructionConsumer {
 			} else {
 				throw new CompilerException("Non-number/bool value provided for 'if' instruction");
 			}
-		} else if(inst instanceof WhileInstruction) {
+			break;
+		}
+		case Opcodes.WHILE: {
 			WhileInstruction ins = (WhileInstruction) inst;
-			// Write opcode
-			out.write(7);
 			// Check condition to make sure it's legal
 			RtflType cond = ins.condition();
 			if(cond instanceof NumberType || cond instanceof AssignmentType) {
@@ -121,21 +124,26 @@ public class CompilerInstructionConsumer implements InstructionConsumer {
 			} else {
 				throw new CompilerException("Non-number/bool value provided for 'while' instruction");
 			}
-		} else if(inst instanceof TryInstruction) {
+			break;
+		}
+		case Opcodes.TRY: {
 			TryInstruction ins = (TryInstruction) inst;
-			// Write opcode
-			out.write(8);
 			// Write try variable name length
 			out.write(ins.variableName().length());
 			// Write try variable name
 			writeStr(ins.variableName());
-		} else if(inst instanceof EndClauseInstruction) {
-			// Write opcode
-			out.write(9);
-		} else if(inst instanceof FuncDefInstruction) {
+			break;
+		}
+		case Opcodes.ASYNC_HANDLE: {
+			AsyncInstruction ins = (AsyncInstruction) inst;
+			// Write handle variable name length
+			out.write(ins.variableName().length());
+			// Write handle variable name
+			writeStr(ins.variableName());
+			break;
+		}
+		case Opcodes.FUNC_DEF: {
 			FuncDefInstruction ins = (FuncDefInstruction) inst;
-			// Write opcode
-			out.write(10);
 			
 			// Write func name length
 			out.write(ins.functionName().length());
@@ -149,44 +157,38 @@ public class CompilerInstructionConsumer implements InstructionConsumer {
 				out.write(name.length());
 				writeStr(name);
 			}
-		} else if(inst instanceof FuncUndefInstruction) {
+			break;
+		}
+		case Opcodes.FUNC_UNDEF: {
 			FuncUndefInstruction ins = (FuncUndefInstruction) inst;
-			// Write opcode
-			out.write(11);
 			// Write func name length
 			out.write(ins.functionName().length());
 			// Write func name
 			writeStr(ins.functionName());
-		} else if(inst instanceof AsyncInstruction) {
-			// Write opcode
-			out.write(12);
-		} else if(inst instanceof DescendScopeInstruction) {
-			// Write opcode
-			out.write(14);
-		} else if(inst instanceof AscendScopeInstruction) {
-			// Write opcode
-			out.write(15);
-		} else if(inst instanceof ArrayAssignInstruction) {
+			break;
+		}
+		case Opcodes.ARRAY_ASSIGN: {
 			ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
 			
-			// Write opcode
-			out.write(16);
-			
 			// Write values
 			writeVal(ins.array());
 			writeVal(ins.index());
 			writeVal(ins.assignValue());
-		} else if(inst instanceof MapAssignInstruction) {
+			break;
+		}
+		case Opcodes.MAP_ASSIGN: {
 			MapAssignInstruction ins = (MapAssignInstruction) inst;
 			
-			// Write opcode
-			out.write(17);
-			
 			// Write values
 			writeVal(ins.map());
 			out.write(ins.field().length());
 			writeStr(ins.field());
 			writeVal(ins.assignValue());
+			break;
+		}
+		default:
+			// End clauses, async blocks and scope changes have no operands
+			break;
 		}
 	}
 	
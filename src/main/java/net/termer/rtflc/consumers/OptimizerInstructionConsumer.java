@@ -0,0 +1,406 @@
+package net.termer.rtflc.consumers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.HashSet;
+
+import net.termer.rtflc.instructions.*;
+import net.termer.rtflc.runtime.ArithmeticFunction;
+import net.termer.rtflc.runtime.RtflFunction;
+import net.termer.rtflc.runtime.RtflRuntime;
+import net.termer.rtflc.runtime.RuntimeException;
+import net.termer.rtflc.runtime.Scope;
+import net.termer.rtflc.runtime.StandardFunctions;
+import net.termer.rtflc.type.BoolType;
+import net.termer.rtflc.type.DoubleType;
+import net.termer.rtflc.type.IntType;
+import net.termer.rtflc.type.NullType;
+import net.termer.rtflc.type.NumberType;
+import net.termer.rtflc.type.RtflType;
+import net.termer.rtflc.type.StringType;
+import net.termer.rtflc.type.assignment.ArrayIndexAssignment;
+import net.termer.rtflc.type.assignment.FunctionCallAssignment;
+import net.termer.rtflc.type.assignment.LogicAssignment;
+import net.termer.rtflc.type.assignment.MapFieldAssignment;
+import net.termer.rtflc.type.assignment.NotAssignment;
+
+/**
+ * InstructionConsumer implementation that optimizes RtflInstruction objects before passing them on to another consumer.
+ * Logic expressions and calls to pure standard functions whose operands are all literals are replaced with their results,
+ * and `if` and `while` blocks whose conditions are constant and false are removed.
+ * Instructions are held until finish() is called, since calls can only be folded once the whole script is known not to redefine the functions they call.
+ * @author termer
+ * @since 1.3
+ */
+public class OptimizerInstructionConsumer implements InstructionConsumer {
+	// Standard functions that only depend on their arguments
+	private static final String[] PURE_FUNCTIONS = {
+		"add", "sub", "mul", "div",
+		"equals", "more_than", "less_than", "not", "and", "or",
+		"concat", "string_contains", "string_trim", "to_string",
+		"index_of", "starts_with", "ends_with", "string_replace", "substring", "char_at", "string_length",
+		"type", "to_number"
+	};
+	// Functions that can define, remove or restrict other functions while a script runs
+	private static final String[] TABLE_CHANGING_FUNCTIONS = {
+		"copy_func", "restrict", "eval", "async", "load", "load_async", "require", "library"
+	};
+	private static HashMap<String, RtflFunction> _pure = null;
+	
+	// Cached instructions
+	private ArrayList<RtflInstruction> _insts = new ArrayList<RtflInstruction>();
+	private InstructionConsumer _next = null;
+	private RtflRuntime _runtime = null;
+	// Scope the instructions will be executed in, null if unknown
+	private Scope _scope = null;
+	// Names of functions that cannot be folded in the current script
+	private HashSet<String> _unfoldable = new HashSet<String>();
+	private boolean _foldCalls = true;
+	
+	/**
+	 * Creates a new optimizer that passes its optimized instructions on to the specified consumer.
+	 * Calls are folded based on the standard implementations of the functions they call.
+	 * @param next The consumer to pass optimized instructions to
+	 * @since 1.3
+	 */
+	public OptimizerInstructionConsumer(InstructionConsumer next) {
+		this(next, (RtflRuntime) null);
+	}
+	/**
+	 * Creates a new optimizer that passes its optimized instructions on to the specified consumer.
+	 * Calls are only folded if the function they call in the provided runtime is still the standard implementation.
+	 * @param next The consumer to pass optimized instructions to
+	 * @param runtime The runtime the instructions will be executed in, or null if unknown
+	 * @since 1.3
+	 */
+	public OptimizerInstructionConsumer(InstructionConsumer next, RtflRuntime runtime) {
+		_next = next;
+		_runtime = runtime;
+	}
+	/**
+	 * Creates a new optimizer that passes its optimized instructions on to the specified consumer.
+	 * Calls are only folded if the function they call in the scope's runtime is still the standard implementation, and if the scope does not restrict any functions.
+	 * @param next The consumer to pass optimized instructions to
+	 * @param scope The scope the instructions will be executed in
+	 * @since 1.3
+	 */
+	public OptimizerInstructionConsumer(InstructionConsumer next, Scope scope) {
+		this(next, scope.runtime());
+		_scope = scope;
+	}
+	
+	public void consume(RtflInstruction instruction) throws IOException {
+		// Cache instruction
+		_insts.add(instruction);
+		
+		// Note any functions the script defines or removes itself
+		if(instruction instanceof FuncDefInstruction) {
+			_unfoldable.add(((FuncDefInstruction) instruction).functionName());
+		} else if(instruction instanceof FuncUndefInstruction) {
+			_unfoldable.add(((FuncUndefInstruction) instruction).functionName());
+		} else if(instruction instanceof FuncCallInstruction) {
+			FuncCallInstruction ins = (FuncCallInstruction) instruction;
+			scanCall(ins.functionName(), ins.functionArguments());
+		}
+		
+		// Look for calls nested in values
+		for(RtflType val : values(instruction))
+			scan(val);
+	}
+	public void finish() throws RuntimeException {
+		ArrayList<RtflInstruction> insts = _insts;
+		_insts = new ArrayList<RtflInstruction>();
+		
+		try {
+			for(int i = 0; i < insts.size(); i++) {
+				RtflInstruction inst = optimize(insts.get(i));
+				
+				// Skip `if` and `while` blocks that can never run
+				if((inst instanceof IfInstruction && isFalse(((IfInstruction) inst).condition())) || (inst instanceof WhileInstruction && isFalse(((WhileInstruction) inst).condition()))) {
+					i = clauseEnd(insts, i);
+					continue;
+				}
+				
+				_next.consume(inst);
+			}
+		} catch(IOException e) {
+			throw new RuntimeException("Failed to pass on optimized instructions: "+e.getMessage());
+		}
+		
+		_unfoldable.clear();
+		_foldCalls = true;
+		_next.finish();
+	}
+	
+	// Returns a copy of the instruction with its values folded, or the instruction itself if nothing could be folded
+	private RtflInstruction optimize(RtflInstruction inst) {
+		String file = inst.originFile();
+		int line = inst.originLine();
+		
+		switch(inst.opcode()) {
+		case Opcodes.VAR_DEF: {
+			VarDefInstruction ins = (VarDefInstruction) inst;
+			RtflType val = fold(ins.variableValue());
+			return val == ins.variableValue() ? inst : new VarDefInstruction(file, line, ins.variableName(), val);
+		}
+		case Opcodes.VAR_LOCAL_DEF: {
+			VarLocalDefInstruction ins = (VarLocalDefInstruction) inst;
+			RtflType val = fold(ins.variableValue());
+			return val == ins.variableValue() ? inst : new VarLocalDefInstruction(file, line, ins.variableName(), val);
+		}
+		case Opcodes.VAR_ASSIGN: {
+			VarAssignInstruction ins = (VarAssignInstruction) inst;
+			RtflType val = fold(ins.assignValue());
+			return val == ins.assignValue() ? inst : new VarAssignInstruction(file, line, ins.variableName(), val);
+		}
+		case Opcodes.FUNC_CALL: {
+			FuncCallInstruction ins = (FuncCallInstruction) inst;
+			RtflType[] args = foldAll(ins.functionArguments());
+			return args == ins.functionArguments() ? inst : new FuncCallInstruction(file, line, ins.functionName(), args);
+		}
+		case Opcodes.RETURN: {
+			ReturnInstruction ins = (ReturnInstruction) inst;
+			RtflType val = fold(ins.returnValue());
+			return val == ins.returnValue() ? inst : new ReturnInstruction(file, line, val);
+		}
+		case Opcodes.IF: {
+			IfInstruction ins = (IfInstruction) inst;
+			RtflType cond = fold(ins.condition());
+			return cond == ins.condition() ? inst : new IfInstruction(file, line, cond);
+		}
+		case Opcodes.WHILE: {
+			WhileInstruction ins = (WhileInstruction) inst;
+			RtflType cond = fold(ins.condition());
+			return cond == ins.condition() ? inst : new WhileInstruction(file, line, cond);
+		}
+		case Opcodes.ARRAY_ASSIGN: {
+			ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
+			RtflType arr = fold(ins.array());
+			RtflType index = fold(ins.index());
+			RtflType val = fold(ins.assignValue());
+			return arr == ins.array() && index == ins.index() && val == ins.assignValue() ? inst : new ArrayAssignInstruction(file, line, arr, index, val);
+		}
+		case Opcodes.MAP_ASSIGN: {
+			MapAssignInstruction ins = (MapAssignInstruction) inst;
+			RtflType map = fold(ins.map());
+			RtflType val = fold(ins.assignValue());
+			return map == ins.map() && val == ins.assignValue() ? inst : new MapAssignInstruction(file, line, map, ins.field(), val);
+		}
+		default:
+			return inst;
+		}
+	}
+	
+	// Returns the literal the value always evaluates to, a copy of the value with its operands folded, or the value itself
+	private RtflType fold(RtflType val) {
+		if(val instanceof FunctionCallAssignment) {
+			FunctionCallAssignment call = (FunctionCallAssignment) val;
+			RtflType[] args = foldAll(call.functionArgs());
+			
+			RtflFunction func = foldable(call.functionName());
+			if(func != null && allLiteral(args)) {
+				RtflType res = evaluate(func, args);
+				if(res != null)
+					return res;
+			}
+			
+			return args == call.functionArgs() ? val : new FunctionCallAssignment(call.functionName(), args);
+		} else if(val instanceof LogicAssignment) {
+			LogicAssignment logic = (LogicAssignment) val;
+			RtflType left = fold(logic.firstValue());
+			RtflType right = fold(logic.secondValue());
+			LogicAssignment res = left == logic.firstValue() && right == logic.secondValue() ? logic : new LogicAssignment(left, logic.comparisonType(), right, logic.inverse());
+			
+			if(isLiteral(left) && isLiteral(right)) {
+				try {
+					return res.extractValue(null);
+				} catch(RuntimeException e) {
+					// Leave the error to be reported when the expression runs
+				}
+			}
+			
+			return res;
+		} else if(val instanceof NotAssignment) {
+			NotAssignment not = (NotAssignment) val;
+			RtflType orig = fold(not.originalValue());
+			NotAssignment res = orig == not.originalValue() ? not : new NotAssignment(orig);
+			
+			if(isLiteral(orig)) {
+				try {
+					return res.extractValue(null);
+				} catch(RuntimeException e) {
+					// Leave the error to be reported when the expression runs
+				}
+			}
+			
+			return res;
+		} else if(val instanceof ArrayIndexAssignment) {
+			ArrayIndexAssignment arr = (ArrayIndexAssignment) val;
+			RtflType array = fold(arr.array());
+			RtflType index = fold(arr.index());
+			return array == arr.array() && index == arr.index() ? val : new ArrayIndexAssignment(array, index);
+		} else if(val instanceof MapFieldAssignment) {
+			MapFieldAssignment map = (MapFieldAssignment) val;
+			RtflType m = fold(map.map());
+			return m == map.map() ? val : new MapFieldAssignment(m, map.field());
+		} else {
+			return val;
+		}
+	}
+	// Folds all values, returning the original array if none of them changed
+	private RtflType[] foldAll(RtflType[] vals) {
+		RtflType[] res = vals;
+		
+		for(int i = 0; i < vals.length; i++) {
+			RtflType val = fold(vals[i]);
+			if(val != vals[i]) {
+				if(res == vals)
+					res = vals.clone();
+				res[i] = val;
+			}
+		}
+		
+		return res;
+	}
+	
+	// Runs a pure function on literal arguments, returning null if it fails or produces something that is not a literal
+	private RtflType evaluate(RtflFunction func, RtflType[] args) {
+		try {
+			RtflType res = func.run(args, _runtime, null);
+			
+			// Results must fit in a compiled string
+			if(isLiteral(res) && !(res instanceof StringType && ((String) res.value()).length() > Short.MAX_VALUE))
+				return res;
+		} catch(Exception e) {
+			// Leave the error to be reported when the call runs
+		}
+		
+		return null;
+	}
+	
+	// Returns the standard implementation of the function if calls to it can be folded, otherwise null
+	private RtflFunction foldable(String name) {
+		if(!_foldCalls || _unfoldable.contains(name))
+			return null;
+		// Restricted functions must fail when called, so leave all calls to the runtime
+		if(_scope != null && _scope.hasRestrictions())
+			return null;
+		
+		RtflFunction func = pureFunctions().get(name);
+		if(func != null && _runtime != null) {
+			// Make sure the runtime has not replaced the standard implementation
+			RtflFunction current = _runtime.functions().get(name);
+			if(current == null || current.getClass() != func.getClass())
+				return null;
+			if(func instanceof ArithmeticFunction && ((ArithmeticFunction) current).operation() != ((ArithmeticFunction) func).operation())
+				return null;
+		}
+		
+		return func;
+	}
+	
+	// Looks for calls to functions that can change which functions exist
+	private void scan(RtflType val) {
+		if(val instanceof FunctionCallAssignment) {
+			FunctionCallAssignment call = (FunctionCallAssignment) val;
+			scanCall(call.functionName(), call.functionArgs());
+		} else if(val instanceof LogicAssignment) {
+			scan(((LogicAssignment) val).firstValue());
+			scan(((LogicAssignment) val).secondValue());
+		} else if(val instanceof NotAssignment) {
+			scan(((NotAssignment) val).originalValue());
+		} else if(val instanceof ArrayIndexAssignment) {
+			scan(((ArrayIndexAssignment) val).array());
+			scan(((ArrayIndexAssignment) val).index());
+		} else if(val instanceof MapFieldAssignment) {
+			scan(((MapFieldAssignment) val).map());
+		}
+	}
+	private void scanCall(String name, RtflType[] args) {
+		for(String func : TABLE_CHANGING_FUNCTIONS) {
+			if(func.equals(name)) {
+				_foldCalls = false;
+				break;
+			}
+		}
+		for(RtflType arg : args)
+			scan(arg);
+	}
+	
+	// Returns all values directly held by the instruction
+	private static RtflType[] values(RtflInstruction inst) {
+		switch(inst.opcode()) {
+		case Opcodes.VAR_DEF:
+			return new RtflType[] { ((VarDefInstruction) inst).variableValue() };
+		case Opcodes.VAR_LOCAL_DEF:
+			return new RtflType[] { ((VarLocalDefInstruction) inst).variableValue() };
+		case Opcodes.VAR_ASSIGN:
+			return new RtflType[] { ((VarAssignInstruction) inst).assignValue() };
+		case Opcodes.RETURN:
+			return new RtflType[] { ((ReturnInstruction) inst).returnValue() };
+		case Opcodes.IF:
+			return new RtflType[] { ((IfInstruction) inst).condition() };
+		case Opcodes.WHILE:
+			return new RtflType[] { ((WhileInstruction) inst).condition() };
+		case Opcodes.ARRAY_ASSIGN: {
+			ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
+			return new RtflType[] { ins.array(), ins.index(), ins.assignValue() };
+		}
+		case Opcodes.MAP_ASSIGN: {
+			MapAssignInstruction ins = (MapAssignInstruction) inst;
+			return new RtflType[] { ins.map(), ins.assignValue() };
+		}
+		default:
+			// Function call arguments are scanned along with the call itself
+			return new RtflType[0];
+		}
+	}
+	
+	// Returns the index of the end of the clause opened at the specified index
+	private static int clauseEnd(ArrayList<RtflInstruction> insts, int index) {
+		int depth = 0;
+		
+		for(int i = index; i < insts.size(); i++) {
+			RtflInstruction inst = insts.get(i);
+			if(inst instanceof ClauseOpenerInstruction) {
+				depth++;
+			} else if(inst instanceof EndClauseInstruction) {
+				depth--;
+				if(depth == 0)
+					return i;
+			}
+		}
+		
+		return insts.size();
+	}
+	
+	// Returns whether the value is a literal that never changes
+	private static boolean isLiteral(RtflType val) {
+		return val instanceof NullType || val instanceof BoolType || val instanceof IntType || val instanceof DoubleType || val instanceof StringType;
+	}
+	private static boolean allLiteral(RtflType[] vals) {
+		for(RtflType val : vals)
+			if(!isLiteral(val))
+				return false;
+		return true;
+	}
+	// Returns whether the value is a literal condition that never passes
+	private static boolean isFalse(RtflType val) {
+		return val instanceof NumberType && isLiteral(val) && ((NumberType) val).toDouble() <= 0;
+	}
+	
+	// Returns the standard implementations of all pure functions
+	private static synchronized HashMap<String, RtflFunction> pureFunctions() {
+		if(_pure == null) {
+			Map<String, RtflFunction> std = StandardFunctions.shared();
+			
+			_pure = new HashMap<String, RtflFunction>();
+			for(String name : PURE_FUNCTIONS)
+				_pure.put(name, std.get(name));
+		}
+		
+		return _pure;
+	}
+}
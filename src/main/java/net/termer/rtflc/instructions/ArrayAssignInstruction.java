@@ -27,6 +27,10 @@ public class ArrayAssignInstruction implements RtflInstruction {
 		return _assignment;
 	}
 	
+	public int opcode() {
+		return Opcodes.ARRAY_ASSIGN;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
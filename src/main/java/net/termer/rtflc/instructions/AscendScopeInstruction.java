@@ -6,6 +6,10 @@ public class AscendScopeInstruction implements RtflInstruction {
 		return "";
 	}
 	
+	public int opcode() {
+		return Opcodes.ASCEND_SCOPE;
+	}
+	
 	public String originFile() {
 		return "null";
 	}
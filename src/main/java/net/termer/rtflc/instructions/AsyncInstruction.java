@@ -3,14 +3,24 @@ package net.termer.rtflc.instructions;
 public class AsyncInstruction implements ClauseOpenerInstruction {
 	private int _line = -1;
 	private String _file = null;
+	private String _var = null;
 	
 	public AsyncInstruction(String file, int line) {
 		_file = file;
 		_line = line;
 	}
+	public AsyncInstruction(String file, int line, String var) {
+		_file = file;
+		_line = line;
+		_var = var;
+	}
 	
 	public String toString() {
-		return "async {";
+		return _var == null ? "async {" : "async "+_var+" {";
+	}
+	
+	public int opcode() {
+		return _var == null ? Opcodes.ASYNC : Opcodes.ASYNC_HANDLE;
 	}
 	
 	public String originFile() {
@@ -19,4 +29,13 @@ public class AsyncInstruction implements ClauseOpenerInstruction {
 	public int originLine() {
 		return _line;
 	}
+	
+	/**
+	 * Returns the name of the variable the handle to the block's result is stored in
+	 * @return The variable name, or null if the handle is not stored
+	 * @since 1.3
+	 */
+	public String variableName() {
+		return _var;
+	}
 }
@@ -6,6 +6,10 @@ public class DescendScopeInstruction implements RtflInstruction {
 		return "";
 	}
 	
+	public int opcode() {
+		return Opcodes.DESCEND_SCOPE;
+	}
+	
 	public String originFile() {
 		return "null";
 	}
@@ -9,6 +9,10 @@ public class EndClauseInstruction implements RtflInstruction {
 		originLine = line;
 	}
 	
+	public int opcode() {
+		return Opcodes.END_CLAUSE;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -15,6 +15,10 @@ public class FuncCallInstruction implements RtflInstruction {
 		funcArgs = args;
 	}
 	
+	public int opcode() {
+		return Opcodes.FUNC_CALL;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
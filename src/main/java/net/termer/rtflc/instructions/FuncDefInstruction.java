@@ -18,6 +18,10 @@ public class FuncDefInstruction implements ClauseOpenerInstruction {
 		argNames = args;
 	}
 	
+	public int opcode() {
+		return Opcodes.FUNC_DEF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
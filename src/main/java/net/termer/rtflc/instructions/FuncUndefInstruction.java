@@ -11,6 +11,10 @@ public class FuncUndefInstruction implements RtflInstruction {
 		funcName = name;
 	}
 	
+	public int opcode() {
+		return Opcodes.FUNC_UNDEF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -17,6 +17,10 @@ public class IfInstruction implements ClauseOpenerInstruction {
 		return ifCondition;
 	}
 	
+	public int opcode() {
+		return Opcodes.IF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -27,6 +27,10 @@ public class MapAssignInstruction implements RtflInstruction {
 		return _assignment;
 	}
 	
+	public int opcode() {
+		return Opcodes.MAP_ASSIGN;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -0,0 +1,90 @@
+package net.termer.rtflc.instructions;
+
+/**
+ * Opcodes of all Rtfl instructions.
+ * These are the same numbers used to identify instructions in Rtfl bytecode, and must never be changed.
+ * @author termer
+ * @since 1.3
+ */
+public final class Opcodes {
+	/**
+	 * Variable definition
+	 */
+	public static final int VAR_DEF = 0;
+	/**
+	 * Local variable definition
+	 */
+	public static final int VAR_LOCAL_DEF = 1;
+	/**
+	 * Variable assignment
+	 */
+	public static final int VAR_ASSIGN = 2;
+	/**
+	 * Variable de-initialization
+	 */
+	public static final int VAR_UNDEF = 3;
+	/**
+	 * Function call
+	 */
+	public static final int FUNC_CALL = 4;
+	/**
+	 * Return statement
+	 */
+	public static final int RETURN = 5;
+	/**
+	 * If statement
+	 */
+	public static final int IF = 6;
+	/**
+	 * While statement
+	 */
+	public static final int WHILE = 7;
+	/**
+	 * Try statement
+	 */
+	public static final int TRY = 8;
+	/**
+	 * End clause (ending curly bracket)
+	 */
+	public static final int END_CLAUSE = 9;
+	/**
+	 * Function definition
+	 */
+	public static final int FUNC_DEF = 10;
+	/**
+	 * Function de-initialization
+	 */
+	public static final int FUNC_UNDEF = 11;
+	/**
+	 * Async block
+	 */
+	public static final int ASYNC = 12;
+	/**
+	 * Source swap (bytecode only, tells the reader that the following instructions come from a new source)
+	 */
+	public static final int SWAP_SOURCE = 13;
+	/**
+	 * Descend scope
+	 */
+	public static final int DESCEND_SCOPE = 14;
+	/**
+	 * Ascend scope
+	 */
+	public static final int ASCEND_SCOPE = 15;
+	/**
+	 * Array assignment
+	 */
+	public static final int ARRAY_ASSIGN = 16;
+	/**
+	 * Map field assignment
+	 */
+	public static final int MAP_ASSIGN = 17;
+	/**
+	 * Async block that stores a handle to its result in a variable.
+	 * Encoded like ASYNC, followed by the length and name of the handle variable.
+	 * Added in Rtfl version 5 of the bytecode format, older runtimes refuse binaries of that version instead of failing on the opcode.
+	 */
+	public static final int ASYNC_HANDLE = 18;
+	
+	private Opcodes() {}
+}
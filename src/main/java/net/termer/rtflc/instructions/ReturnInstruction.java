@@ -17,6 +17,10 @@ public class ReturnInstruction implements RtflInstruction {
 		return returnVal;
 	}
 	
+	public int opcode() {
+		return Opcodes.RETURN;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
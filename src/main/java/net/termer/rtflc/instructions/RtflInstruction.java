@@ -6,6 +6,13 @@ package net.termer.rtflc.instructions;
  * @since 1.0
  */
 public interface RtflInstruction {
+	/**
+	 * The opcode of this instruction, the same number that identifies it in bytecode.
+	 * See Opcodes for all valid opcodes.
+	 * @return This instruction's opcode
+	 * @since 1.3
+	 */
+	public int opcode();
 	/**
 	 * The name of the origin this instruction came from
 	 * @return The name of this instruction's origin
@@ -11,6 +11,10 @@ public class TryInstruction implements ClauseOpenerInstruction {
 		varName = var;
 	}
 	
+	public int opcode() {
+		return Opcodes.TRY;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -15,6 +15,10 @@ public class VarAssignInstruction implements RtflInstruction {
 		varValue = value;
 	}
 	
+	public int opcode() {
+		return Opcodes.VAR_ASSIGN;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -15,6 +15,10 @@ public class VarDefInstruction implements RtflInstruction {
 		varValue = value;
 	}
 	
+	public int opcode() {
+		return Opcodes.VAR_DEF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -15,6 +15,10 @@ public class VarLocalDefInstruction implements RtflInstruction {
 		varValue = value;
 	}
 	
+	public int opcode() {
+		return Opcodes.VAR_LOCAL_DEF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
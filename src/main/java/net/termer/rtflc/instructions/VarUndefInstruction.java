@@ -11,6 +11,10 @@ public class VarUndefInstruction implements RtflInstruction {
 		varName = name;
 	}
 	
+	public int opcode() {
+		return Opcodes.VAR_UNDEF;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
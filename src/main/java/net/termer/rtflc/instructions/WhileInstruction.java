@@ -17,6 +17,10 @@ public class WhileInstruction implements ClauseOpenerInstruction {
 		return whileCondition;
 	}
 	
+	public int opcode() {
+		return Opcodes.WHILE;
+	}
+	
 	public String originFile() {
 		return originFile;
 	}
@@ -30,22 +30,7 @@ import net.termer.rtflc.type.*;
 public class BytecodeInstructionProducer {
 	/*
 	 * OPCODES
-	 * 0 - Variable definition
-	 * 1 - Local variable definition
-	 * 2 - Variable assignment
-	 * 3 - Variable de-initialization
-	 * 4 - Function call
-	 * 5 - Return statement
-	 * 6 - If statement
-	 * 7 - While statement
-	 * 8 - Try statement
-	 * 9 - End clause (ending curly bracket)
-	 * 10 - Function definition
-	 * 11 - Function de-initialization
-	 * 12 - Async block
-	 * 14 - Descend scope
-	 * 15 - Ascend scope
-	 * 16 - Array assignment
+	 * See net.termer.rtflc.instructions.Opcodes
 	 */
 	/*
 	 * VALTYPES
@@ -82,54 +67,38 @@ public class BytecodeInstructionProducer {
 			int ln = readLines ? readShort(buf) : 0;
 			int opcode = buf.read();
 			
-			if(opcode == 0) {
-				// VAR_DEF
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+			switch(opcode) {
+			case Opcodes.VAR_DEF: {
+				String name = readName(buf);
 				
 				RtflType val = resolveVal(buf, src, ln);
 				
-				cons.consume(new VarDefInstruction(src, ln, name.toString(), val));
-			} else if(opcode == 1) {
-				// VAR_LOCAL_DEF
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				cons.consume(new VarDefInstruction(src, ln, name, val));
+				break;
+			}
+			case Opcodes.VAR_LOCAL_DEF: {
+				String name = readName(buf);
 				
 				RtflType val = resolveVal(buf, src, ln);
 				
-				cons.consume(new VarLocalDefInstruction(src, ln, name.toString(), val));
-			} else if(opcode == 2) {
-				// VAR_ASSIGN
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				cons.consume(new VarLocalDefInstruction(src, ln, name, val));
+				break;
+			}
+			case Opcodes.VAR_ASSIGN: {
+				String name = readName(buf);
 				
 				RtflType val = resolveVal(buf, src, ln);
-				cons.consume(new VarAssignInstruction(src, ln, name.toString(), val));
-			} else if(opcode == 3) {
-				// VAR_UNDEF
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
-				
-				cons.consume(new VarUndefInstruction(src, ln, name.toString()));
-			} else if(opcode == 4) {
-				// FUNC_CALL
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
+				cons.consume(new VarAssignInstruction(src, ln, name, val));
+				break;
+			}
+			case Opcodes.VAR_UNDEF: {
+				String name = readName(buf);
 				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				cons.consume(new VarUndefInstruction(src, ln, name));
+				break;
+			}
+			case Opcodes.FUNC_CALL: {
+				String name = readName(buf);
 				
 				int arglen = buf.read();
 				
@@ -137,14 +106,16 @@ public class BytecodeInstructionProducer {
 				for(int i = 0; i < arglen; i++)
 					args.add(resolveVal(buf, src, ln));
 				
-				cons.consume(new FuncCallInstruction(src, ln, name.toString(), args.toArray(new RtflType[0])));
-			} else if(opcode == 5) {
-				// RETURN
+				cons.consume(new FuncCallInstruction(src, ln, name, args.toArray(new RtflType[0])));
+				break;
+			}
+			case Opcodes.RETURN: {
 				RtflType returnVal = resolveVal(buf, src, ln);
 				
 				cons.consume(new ReturnInstruction(src, ln, returnVal));
-			} else if(opcode == 6) {
-				// IF
+				break;
+			}
+			case Opcodes.IF: {
 				RtflType condition = resolveVal(buf, src, ln);
 				
 				if(condition instanceof NumberType || condition instanceof AssignmentType) {
@@ -152,8 +123,9 @@ public class BytecodeInstructionProducer {
 				} else {
 					throw new ProducerException("Non-number/bool value provided for 'if' instruction", src, ln);
 				}
-			} else if(opcode == 7) {
-				// WHILE
+				break;
+			}
+			case Opcodes.WHILE: {
 				RtflType condition = resolveVal(buf, src, ln);
 				
 				if(condition instanceof NumberType || condition instanceof AssignmentType) {
@@ -161,84 +133,77 @@ public class BytecodeInstructionProducer {
 				} else {
 					throw new ProducerException("Non-number/bool value provided for 'while' instruction", src, ln);
 				}
-			} else if(opcode == 8) {
-				// TRY
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				break;
+			}
+			case Opcodes.TRY: {
+				String name = readName(buf);
 				
-				cons.consume(new TryInstruction(src, ln, name.toString()));
-			} else if(opcode == 9) {
-				// END_CLAUSE
+				cons.consume(new TryInstruction(src, ln, name));
+				break;
+			}
+			case Opcodes.END_CLAUSE: {
 				cons.consume(new EndClauseInstruction(src, ln));
-			} else if(opcode == 10) {
-				// FUNC_DEF
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				break;
+			}
+			case Opcodes.FUNC_DEF: {
+				String name = readName(buf);
 				
 				// Read argument names
 				int argNameCount = buf.read();
 				String[] argNames = new String[argNameCount];
-				for(int i = 0; i < argNameCount; i++) {
-					int nameLen = buf.read();
-					StringBuilder argName = new StringBuilder(nameLen);
-					for(int j = 0; j < nameLen; j++)
-						argName.append((char)buf.read());
-					argNames[i] = argName.toString();
-				}
+				for(int i = 0; i < argNameCount; i++)
+					argNames[i] = readName(buf);
 				
-				cons.consume(new FuncDefInstruction(src, ln, name.toString(), argNames));
-			} else if(opcode == 11) {
-				// FUNC_UNDEF
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				cons.consume(new FuncDefInstruction(src, ln, name, argNames));
+				break;
+			}
+			case Opcodes.FUNC_UNDEF: {
+				String name = readName(buf);
 				
-				cons.consume(new FuncUndefInstruction(src, ln, name.toString()));
+				cons.consume(new FuncUndefInstruction(src, ln, name));
 				break;
-			} else if(opcode == 12) {
-				// ASYNC_BLOCK
+			}
+			case Opcodes.ASYNC: {
 				cons.consume(new AsyncInstruction(src, ln));
-			} else if(opcode == 13) {
-				// SWAP_SRC
-				int nlen = buf.read();
-				StringBuilder name = new StringBuilder(nlen);
-				
-				for(int i = 0; i < nlen; i++)
-					name.append((char)buf.read());
+				break;
+			}
+			case Opcodes.ASYNC_HANDLE: {
+				String name = readName(buf);
 				
+				cons.consume(new AsyncInstruction(src, ln, name));
+				break;
+			}
+			case Opcodes.SWAP_SOURCE: {
 				// Set source String to new source
-				src = name.toString();
-			} else if(opcode == 14) {
-				// DESC_SCOPE
+				src = readName(buf);
+				break;
+			}
+			case Opcodes.DESCEND_SCOPE: {
 				cons.consume(new DescendScopeInstruction());
-			} else if(opcode == 15) {
-				// ASC_SCOPE
+				break;
+			}
+			case Opcodes.ASCEND_SCOPE: {
 				cons.consume(new AscendScopeInstruction());
-			} else if(opcode == 16) {
-				// ARRAY_ASSIGN
+				break;
+			}
+			case Opcodes.ARRAY_ASSIGN: {
 				RtflType array = resolveVal(buf, src, ln);
 				RtflType index = resolveVal(buf, src, ln);
 				RtflType value = resolveVal(buf, src, ln);
 				
 				cons.consume(new ArrayAssignInstruction(src, ln, array, index, value));
-			} else if(opcode == 17) {
-				// MAP_ASSIGN
+				break;
+			}
+			case Opcodes.MAP_ASSIGN: {
 				RtflType map = resolveVal(buf, src, ln);
-				int fieldLen = buf.read();
-				StringBuilder field = new StringBuilder(fieldLen);
-				for(int i = 0; i < fieldLen; i++)
-					field.append((char)buf.read());
+				String field = readName(buf);
 				
 				RtflType value = resolveVal(buf, src, ln);
 				
-				cons.consume(new MapAssignInstruction(src, ln, map, field.toString(), value));
-			} else {
+				cons.consume(new MapAssignInstruction(src, ln, map, field, value));
+				break;
+			}
+			default:
 				// INVALID
 				throw new ProducerException("Encountered invalid opcode \""+opcode+"\", perhaps this was compiled for a newer version of Rtfl?");
 			}
@@ -269,15 +234,15 @@ public class BytecodeInstructionProducer {
 		switch(type) {
 		case 0:
 			// Null
-			val = new NullType();
+			val = NullType.INSTANCE;
 			break;
 		case 1:
 			// Bool
-			val = new BoolType(in.read() > 0);
+			val = BoolType.of(in.read() > 0);
 			break;
 		case 2:
 			// Integer
-			val = new IntType(readInt(in));
+			val = IntType.of(readInt(in));
 			break;
 		case 3:
 			// Double
@@ -298,11 +263,7 @@ public class BytecodeInstructionProducer {
 			break;
 		case 6:
 			// Function call
-			int nlen = in.read();
-			StringBuilder name = new StringBuilder(nlen);
-			
-			for(int i = 0; i < nlen; i++)
-				name.append((char)in.read());
+			String name = readName(in);
 			
 			int arglen = in.read();
 			
@@ -310,17 +271,13 @@ public class BytecodeInstructionProducer {
 			for(int i = 0; i < arglen; i++)
 				args.add(resolveVal(in, src, ln));
 			
-			val = new FunctionCallAssignment(name.toString(), args.toArray(new RtflType[0]));
+			val = new FunctionCallAssignment(name, args.toArray(new RtflType[0]));
 			break;
 		case 7:
 			// Variable reference
-			int vlen = in.read();
-			StringBuilder varName = new StringBuilder(vlen);
-			
-			for(int i = 0; i < vlen; i++)
-				varName.append((char)in.read());
+			String varName = readName(in);
 			
-			val = new VarRefAssignment(varName.toString());
+			val = new VarRefAssignment(varName);
 			break;
 		case 8:
 			// Comparison
@@ -345,12 +302,9 @@ public class BytecodeInstructionProducer {
 		case 11:
 			// Map field
 			RtflType map = resolveVal(in, src, ln);
-			int fieldLen = in.read();
-			StringBuffer fieldName = new StringBuffer(fieldLen);
-			for(int i = 0; i < fieldLen; i++)
-				fieldName.append((char) in.read());
+			String fieldName = readName(in);
 			
-			val = new MapFieldAssignment(map, fieldName.toString());
+			val = new MapFieldAssignment(map, fieldName);
 			break;
 		default:
 			throw new ProducerException("Encountered invalid value type \""+type+"\", perhaps this was compiled for a newer version of Rtfl?", src, ln);
@@ -359,6 +313,16 @@ public class BytecodeInstructionProducer {
 		return val;
 	}
 	
+	// Reads a name prefixed with its length from an InputStream
+	private static String readName(InputStream in) throws IOException {
+		int len = in.read();
+		char[] chars = new char[len];
+		
+		for(int i = 0; i < len; i++)
+			chars[i] = (char)in.read();
+		
+		return new String(chars);
+	}
 	// Reads a short value from an InputStream
 	@SuppressWarnings("static-access")
 	private static short readShort(InputStream in) throws IOException {
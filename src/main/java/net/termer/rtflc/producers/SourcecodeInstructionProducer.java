@@ -47,7 +47,7 @@ public class SourcecodeInstructionProducer {
 	private static final Pattern patTry = Pattern.compile("^error ([a-zA-Z0-9_-]*)[ ]*\\{$");
 	private static final Pattern patFuncDef = Pattern.compile("^func ([a-zA-Z0-9_-]*)[ ]*\\{$");
 	private static final Pattern patFuncUndef = Pattern.compile("^unfunc[ ]*([a-zA-Z0-9_-]*)$");
-	private static final Pattern patAsync = Pattern.compile("^async[ ]*\\{$");
+	private static final Pattern patAsync = Pattern.compile("^async[ ]*([a-zA-Z0-9_-]*)[ ]*\\{$");
 	private static final Pattern patArrayAssignment = Pattern.compile("^(.+)[ ]*\\[[ ]*(.+)[ ]*\\][ ]*=[ ]*(.+)$");
 	private static final Pattern patMapFieldAssignment = Pattern.compile("^(.+)->([a-zA-Z0-9_-]+)[ ]*=[ ]*(.+)$");
 	private static final Pattern patFuncDefArgs = Pattern.compile("^func[ ]+([a-zA-Z0-9_-]*)\\([ ]*(.*)[ ]*\\)[ ]*\\{$");
@@ -204,7 +204,10 @@ public class SourcecodeInstructionProducer {
 					(lnMatch = patAsync.matcher(ln)).matches()
 					// Async block
 				) {
-					cons.consume(new AsyncInstruction(src, lnNum));
+					if(lnMatch.group(1).isEmpty())
+						cons.consume(new AsyncInstruction(src, lnNum));
+					else
+						cons.consume(new AsyncInstruction(src, lnNum, lnMatch.group(1)));
 				} else if(ln.equalsIgnoreCase("}")) {
 					// End clause
 					cons.consume(new EndClauseInstruction(src, lnNum));
@@ -236,11 +239,11 @@ public class SourcecodeInstructionProducer {
 		
 		Matcher valMatch = null;
 		if(str.equalsIgnoreCase("null")) {
-			val = new NullType();
+			val = NullType.INSTANCE;
 		} else if(str.equalsIgnoreCase("true")) {
-			val = new BoolType(true);
+			val = BoolType.TRUE;
 		} else if(str.equalsIgnoreCase("false")) {
-			val = new BoolType(false);
+			val = BoolType.FALSE;
 		} else if(
 			(valMatch = patString.matcher(str)).matches()
 		) {
@@ -257,7 +260,7 @@ public class SourcecodeInstructionProducer {
 		} else if(
 			(valMatch = patNumber.matcher(str)).matches()
 		) {
-			val = str.contains(".") ? new DoubleType(Double.parseDouble(str)) : new IntType(Integer.parseInt(str));
+			val = str.contains(".") ? new DoubleType(Double.parseDouble(str)) : IntType.of(Integer.parseInt(str));
 		} else if(
 			(valMatch = patFunc.matcher(str)).matches()
 			// Function
@@ -323,9 +326,9 @@ public class SourcecodeInstructionProducer {
 			} else if(logicVal instanceof NumberType) {
 				// Check if inverse
 				if(str.startsWith("!"))
-					val = new BoolType(!(((NumberType) logicVal).toDouble() > 0));
+					val = BoolType.of(!(((NumberType) logicVal).toDouble() > 0));
 				else
-					val = new BoolType(((NumberType) logicVal).toDouble() > 0);
+					val = BoolType.of(((NumberType) logicVal).toDouble() > 0);
 			} else {
 				throw new ProducerException("Non-number/bool value provided for logic expression", src, ln);
 			}
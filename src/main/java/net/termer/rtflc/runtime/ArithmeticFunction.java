@@ -0,0 +1,101 @@
+package net.termer.rtflc.runtime;
+
+import net.termer.rtflc.type.DoubleType;
+import net.termer.rtflc.type.IntType;
+import net.termer.rtflc.type.NullType;
+import net.termer.rtflc.type.NumberType;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Implementation of the standard `add`, `sub`, `mul` and `div` functions.
+ * Calls to these functions are recognized by the runtime and applied directly to their operands, without going through the function call protocol,
+ * for as long as the function a call resolves to is still an ArithmeticFunction.
+ * @author termer
+ * @since 1.3
+ */
+public class ArithmeticFunction implements RtflFunction {
+	/**
+	 * Arithmetic operations
+	 * @author termer
+	 * @since 1.3
+	 */
+	public static enum Operation {
+		ADD, SUB, MUL, DIV
+	}
+	
+	private final Operation _op;
+	
+	/**
+	 * Creates a new function applying the specified operation
+	 * @param operation The operation to apply
+	 * @since 1.3
+	 */
+	public ArithmeticFunction(Operation operation) {
+		_op = operation;
+	}
+	
+	/**
+	 * Returns the operation this function applies
+	 * @return The operation
+	 * @since 1.3
+	 */
+	public Operation operation() {
+		return _op;
+	}
+	
+	public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+		if(args.length > 1)
+			return apply(args[0], args[1]);
+		else
+			throw new RuntimeException("Must provide at least 2 arguments");
+	}
+	
+	/**
+	 * Applies this function's operation to two values
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return The result, or a NullType if either operand is not a number
+	 * @since 1.3
+	 */
+	public RtflType apply(RtflType left, RtflType right) {
+		if(!(left instanceof NumberType && right instanceof NumberType))
+			return NullType.INSTANCE;
+		
+		NumberType l = (NumberType) left;
+		NumberType r = (NumberType) right;
+		
+		if(_op == Operation.DIV) {
+			double dbl = l.toDouble() / r.toDouble();
+			
+			// Check is result is an int
+			if(dbl == Math.floor(dbl) && !Double.isInfinite(dbl))
+				return IntType.of((int) dbl);
+			else
+				return new DoubleType(dbl);
+		} else if(left instanceof DoubleType || right instanceof DoubleType) {
+			double ld = l.toDouble();
+			double rd = r.toDouble();
+			
+			switch(_op) {
+			case ADD:
+				return new DoubleType(ld + rd);
+			case SUB:
+				return new DoubleType(ld - rd);
+			default:
+				return new DoubleType(ld * rd);
+			}
+		} else {
+			int li = l.toInt();
+			int ri = r.toInt();
+			
+			switch(_op) {
+			case ADD:
+				return IntType.of(li + ri);
+			case SUB:
+				return IntType.of(li - ri);
+			default:
+				return IntType.of(li * ri);
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package net.termer.rtflc.runtime;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the async blocks of a runtime, including those started by the `async` and `load_async` functions.
+ * Schedulers can limit how many blocks may be waiting to start; scheduling a block while the limit is reached blocks the scheduling thread until another block starts.
+ * The JVM is kept alive while blocks are waiting or running, like it is by the threads of the default scheduler.
+ * Custom schedulers extend this class and implement start(Runnable).
+ * @author termer
+ * @since 1.3
+ */
+public abstract class AsyncScheduler {
+	// Blocks that may still be waiting to start, null if there is no limit
+	private final Semaphore _queue;
+	private final boolean _keepAlive;
+	private final Object _lock = new Object();
+	// Blocks that were scheduled and have not finished yet
+	private int _active = 0;
+	
+	private static final AtomicInteger _nextThread = new AtomicInteger();
+	
+	/**
+	 * Creates a new scheduler
+	 * @param maxQueued The maximum amount of blocks that may be waiting to start, or 0 for no limit
+	 * @param keepAlive Whether the scheduler must keep the JVM alive while blocks are running, because the threads it starts them on are daemon threads
+	 * @since 1.3
+	 */
+	protected AsyncScheduler(int maxQueued, boolean keepAlive) {
+		_queue = maxQueued > 0 ? new Semaphore(maxQueued) : null;
+		_keepAlive = keepAlive;
+	}
+	
+	/**
+	 * Returns a scheduler that starts a new thread for every block, the default
+	 * @return The scheduler
+	 * @since 1.3
+	 */
+	public static AsyncScheduler threads() {
+		return new AsyncScheduler(0, false) {
+			protected void start(Runnable task) {
+				new Thread(task, threadName()).start();
+			}
+		};
+	}
+	/**
+	 * Returns a scheduler that runs blocks on a work-stealing pool with a bounded amount of threads
+	 * @param parallelism The amount of threads to run blocks on
+	 * @param maxQueued The maximum amount of blocks that may be waiting to start, or 0 for no limit
+	 * @return The scheduler
+	 * @since 1.3
+	 */
+	public static AsyncScheduler pool(int parallelism, int maxQueued) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName(threadName());
+			thread.setDaemon(true);
+			return thread;
+		}, null, true);
+		
+		return new AsyncScheduler(maxQueued, true) {
+			protected void start(Runnable task) {
+				pool.execute(task);
+			}
+			public void shutdown() {
+				pool.shutdown();
+			}
+		};
+	}
+	/**
+	 * Returns a scheduler that starts a new virtual thread for every block.
+	 * On JVMs without virtual threads, platform threads are started instead.
+	 * @param maxQueued The maximum amount of blocks that may be waiting to start, or 0 for no limit
+	 * @return The scheduler
+	 * @since 1.3
+	 */
+	public static AsyncScheduler virtualThreads(int maxQueued) {
+		ExecutorService executor = null;
+		try {
+			// Looked up reflectively, virtual threads were added in Java 21
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			// Not supported, fall back to platform threads
+		}
+		
+		if(executor == null) {
+			return new AsyncScheduler(maxQueued, false) {
+				protected void start(Runnable task) {
+					new Thread(task, threadName()).start();
+				}
+			};
+		} else {
+			ExecutorService virtual = executor;
+			return new AsyncScheduler(maxQueued, true) {
+				protected void start(Runnable task) {
+					virtual.execute(task);
+				}
+				public void shutdown() {
+					virtual.shutdown();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Starts running a task on another thread
+	 * @param task The task to run
+	 * @since 1.3
+	 */
+	protected abstract void start(Runnable task);
+	
+	/**
+	 * Schedules a task to run on another thread.
+	 * If the maximum amount of tasks are waiting to start, this blocks until one of them starts.
+	 * If the scheduling thread is interrupted while waiting, the task is scheduled anyway and the thread's interrupt status is restored.
+	 * @param task The task to run
+	 * @since 1.3
+	 */
+	public void schedule(Runnable task) {
+		boolean queued = _queue != null && enqueue();
+		
+		synchronized(_lock) {
+			if(_active++ == 0 && _keepAlive)
+				keepAlive();
+		}
+		
+		try {
+			start(() -> {
+				if(queued)
+					_queue.release();
+				
+				try {
+					task.run();
+				} finally {
+					finished();
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			// The task was rejected and will never run
+			if(queued)
+				_queue.release();
+			finished();
+			throw e;
+		}
+	}
+	/**
+	 * Returns the amount of scheduled tasks that have not finished yet
+	 * @return The amount of waiting and running tasks
+	 * @since 1.3
+	 */
+	public int active() {
+		synchronized(_lock) {
+			return _active;
+		}
+	}
+	/**
+	 * Stops accepting new tasks, tasks that were already scheduled still run
+	 * @since 1.3
+	 */
+	public void shutdown() {
+		// Nothing to shut down by default
+	}
+	
+	/**
+	 * Returns a name for a thread that runs async blocks
+	 * @return The thread name
+	 * @since 1.3
+	 */
+	protected static String threadName() {
+		return "RtflWorker-"+_nextThread.incrementAndGet();
+	}
+	
+	// Takes a spot in the queue, returns false if the thread was interrupted while waiting for one
+	private boolean enqueue() {
+		try {
+			// Lets pools compensate for their threads that are blocked scheduling blocks of their own
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				private boolean _acquired = false;
+				
+				public boolean block() throws InterruptedException {
+					if(!_acquired) {
+						_queue.acquire();
+						_acquired = true;
+					}
+					return true;
+				}
+				public boolean isReleasable() {
+					return _acquired || (_acquired = _queue.tryAcquire());
+				}
+			});
+			return true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	private void finished() {
+		synchronized(_lock) {
+			if(--_active == 0)
+				_lock.notifyAll();
+		}
+	}
+	// Starts a thread that keeps the JVM alive until all tasks have finished
+	private void keepAlive() {
+		Thread keeper = new Thread(() -> {
+			synchronized(_lock) {
+				while(_active > 0) {
+					try {
+						_lock.wait();
+					} catch(InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "RtflAsyncKeepAlive");
+		keeper.setDaemon(false);
+		keeper.start();
+	}
+}
@@ -0,0 +1,20 @@
+package net.termer.rtflc.runtime;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+
+/**
+ * Exception thrown when an execution exceeds its ExecutionBudget.
+ * It is not caught by `error` blocks, so scripts cannot keep running after their budget is exceeded.
+ * @author termer
+ * @since 1.3
+ */
+public class BudgetExceededException extends RuntimeException {
+	public BudgetExceededException(String msg) {
+		super(msg);
+	}
+	public BudgetExceededException(String msg, RtflInstruction cause) {
+		super(msg, cause);
+	}
+	
+	private static final long serialVersionUID = 1L;
+}
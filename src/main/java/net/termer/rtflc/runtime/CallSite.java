@@ -0,0 +1,73 @@
+package net.termer.rtflc.runtime;
+
+/**
+ * Inline cache for a single function call site.
+ * Remembers the function its name resolved to along with the version of the function table it was resolved from,
+ * so calls made while the table is unchanged do not have to look the function up again.
+ * Scopes with restricted functions always look functions up.
+ * @author termer
+ * @since 1.3
+ */
+public class CallSite {
+	private final String _name;
+	private volatile Entry _entry = null;
+	
+	/**
+	 * Creates a new call site for the function with the specified name
+	 * @param functionName The name of the function called at this site
+	 * @since 1.3
+	 */
+	public CallSite(String functionName) {
+		_name = functionName;
+	}
+	
+	/**
+	 * Returns the name of the function called at this site
+	 * @return The function name
+	 * @since 1.3
+	 */
+	public String functionName() {
+		return _name;
+	}
+	
+	/**
+	 * Returns the function to call at this site
+	 * @param scope The scope the call is made in
+	 * @return The function
+	 * @throws RuntimeException If the function does not exist or is restricted
+	 * @since 1.3
+	 */
+	public RtflFunction function(Scope scope) throws RuntimeException {
+		RuntimeMetrics metrics = scope.runtime().metrics();
+		if(metrics != null)
+			metrics.call(_name);
+		
+		if(scope.hasRestrictions())
+			return scope.function(_name);
+		
+		FunctionTable table = scope.runtime().functions();
+		Entry entry = _entry;
+		if(entry != null && entry.table == table && entry.version == table.version())
+			return entry.function;
+		
+		// Read the version before the function, so a change made in between is caught by the next call
+		long version = table.version();
+		RtflFunction func = scope.function(_name);
+		_entry = new Entry(table, version, func);
+		
+		return func;
+	}
+	
+	// A resolved function, immutable so it can be replaced atomically
+	private static class Entry {
+		final FunctionTable table;
+		final long version;
+		final RtflFunction function;
+		
+		Entry(FunctionTable functionTable, long tableVersion, RtflFunction func) {
+			table = functionTable;
+			version = tableVersion;
+			function = func;
+		}
+	}
+}
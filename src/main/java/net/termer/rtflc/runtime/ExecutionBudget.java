@@ -0,0 +1,243 @@
+package net.termer.rtflc.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the work an execution may do: a maximum amount of instructions, a deadline and an approximate allocation ceiling.
+ * Budgets are checked on while loop iterations and function calls, so limits are enforced without a watchdog thread.
+ * Every loop iteration counts the instructions of the loop's body, and every call counts the instructions of the called function's body.
+ * The allocation ceiling counts all memory allocated by the threads that execute with the budget, so it includes memory used by the runtime itself,
+ * and is ignored on JVMs that cannot measure allocations per thread.
+ * Once a budget is exceeded it stays exceeded, and every following check throws a BudgetExceededException.
+ * Async blocks started by an execution share its budget.
+ * Budgets can also be cancelled from another thread, so a budget without limits works as a cancellation handle for an execution and its async blocks.
+ * @author termer
+ * @since 1.3
+ */
+public class ExecutionBudget {
+	private long _maxInstructions = Long.MAX_VALUE;
+	// Deadline in System.nanoTime() time, only used if there is one
+	private long _deadline = 0;
+	private boolean _hasDeadline = false;
+	private long _maxAllocated = Long.MAX_VALUE;
+	
+	private final AtomicLong _instructions = new AtomicLong();
+	private final AtomicLong _allocated = new AtomicLong();
+	// Bytes allocated by each thread when it last checked this budget
+	private final ThreadLocal<long[]> _lastAllocated = ThreadLocal.withInitial(() -> new long[] { allocatedBytes() });
+	// Checks since the deadline and allocations were last checked, racy since it is only used to space them out
+	private int _checks = 0;
+	private volatile String _exceeded = null;
+	private volatile boolean _cancelled = false;
+	// Notified when the budget is cancelled, to wake up sleeping executions
+	private final Object _lock = new Object();
+	
+	// Amount of checks between checks of the deadline and allocations
+	private static final int SLOW_CHECK_INTERVAL = 16;
+	private static final com.sun.management.ThreadMXBean _threads = threadBean();
+	
+	/**
+	 * Sets the maximum amount of instructions that may be executed
+	 * @param instructions The maximum amount of instructions
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public ExecutionBudget maxInstructions(long instructions) {
+		_maxInstructions = instructions;
+		return this;
+	}
+	/**
+	 * Returns the maximum amount of instructions that may be executed
+	 * @return The maximum amount of instructions, Long.MAX_VALUE if there is no limit
+	 * @since 1.3
+	 */
+	public long maxInstructions() {
+		return _maxInstructions;
+	}
+	/**
+	 * Sets the time after which execution is stopped, counted from now
+	 * @param millis The amount of milliseconds execution may take
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public ExecutionBudget timeout(long millis) {
+		_deadline = System.nanoTime()+millis*1000000L;
+		_hasDeadline = true;
+		return this;
+	}
+	/**
+	 * Sets the time after which execution is stopped
+	 * @param epochMillis The deadline, in milliseconds since the epoch
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public ExecutionBudget deadline(long epochMillis) {
+		return timeout(epochMillis-System.currentTimeMillis());
+	}
+	/**
+	 * Sets the maximum amount of bytes that may be allocated
+	 * @param bytes The maximum amount of bytes
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public ExecutionBudget maxAllocated(long bytes) {
+		_maxAllocated = bytes;
+		return this;
+	}
+	/**
+	 * Returns the maximum amount of bytes that may be allocated
+	 * @return The maximum amount of bytes, Long.MAX_VALUE if there is no limit
+	 * @since 1.3
+	 */
+	public long maxAllocated() {
+		return _maxAllocated;
+	}
+	
+	/**
+	 * Returns the amount of instructions counted so far
+	 * @return The amount of instructions
+	 * @since 1.3
+	 */
+	public long instructions() {
+		return _instructions.get();
+	}
+	/**
+	 * Returns the amount of bytes counted as allocated so far
+	 * @return The amount of bytes
+	 * @since 1.3
+	 */
+	public long allocated() {
+		return _allocated.get();
+	}
+	/**
+	 * Returns whether this budget has been exceeded
+	 * @return Whether this budget has been exceeded
+	 * @since 1.3
+	 */
+	public boolean exceeded() {
+		return _exceeded != null;
+	}
+	
+	/**
+	 * Cancels all executions using this budget.
+	 * They stop at their next loop iteration or function call, and sleeping executions wake up immediately.
+	 * @since 1.3
+	 */
+	public void cancel() {
+		_exceeded = "Execution cancelled";
+		_cancelled = true;
+		
+		synchronized(_lock) {
+			_lock.notifyAll();
+		}
+	}
+	/**
+	 * Returns whether this budget has been cancelled
+	 * @return Whether this budget has been cancelled
+	 * @since 1.3
+	 */
+	public boolean cancelled() {
+		return _cancelled;
+	}
+	
+	/**
+	 * Throws a BudgetExceededException if this budget has already been exceeded or cancelled, without counting anything against it
+	 * @throws BudgetExceededException If the budget is exceeded
+	 * @since 1.3
+	 */
+	public void check() throws BudgetExceededException {
+		if(_exceeded != null)
+			throw new BudgetExceededException(_exceeded);
+	}
+	/**
+	 * Sleeps for the specified amount of time, waking up early if this budget is cancelled or its deadline passes
+	 * @param millis The amount of milliseconds to sleep
+	 * @throws BudgetExceededException If the budget is cancelled or its deadline passes while sleeping
+	 * @throws InterruptedException If the thread is interrupted while sleeping
+	 * @since 1.3
+	 */
+	public void sleep(long millis) throws BudgetExceededException, InterruptedException {
+		long wake = System.nanoTime()+millis*1000000L;
+		
+		synchronized(_lock) {
+			while(true) {
+				check();
+				
+				long now = System.nanoTime();
+				if(_hasDeadline && now-_deadline >= 0)
+					exceed("deadline passed");
+				
+				long left = wake-now;
+				if(left <= 0)
+					break;
+				if(_hasDeadline && _deadline-now < left)
+					left = _deadline-now;
+				
+				// Waits in whole milliseconds, rounded up
+				_lock.wait((left+999999)/1000000);
+			}
+		}
+	}
+	
+	/**
+	 * Counts executed instructions against this budget and checks all of its limits
+	 * @param instructions The amount of instructions executed since the last check
+	 * @throws BudgetExceededException If the budget is exceeded
+	 * @since 1.3
+	 */
+	public void charge(int instructions) throws BudgetExceededException {
+		if(_exceeded != null)
+			throw new BudgetExceededException(_exceeded);
+		
+		if(_instructions.addAndGet(instructions) > _maxInstructions)
+			exceed("instruction limit of "+_maxInstructions+" reached");
+		
+		// Reading the clock and allocation counters costs more, so they are checked less often
+		if(++_checks >= SLOW_CHECK_INTERVAL) {
+			_checks = 0;
+			
+			if(_hasDeadline && System.nanoTime()-_deadline > 0)
+				exceed("deadline passed");
+			
+			if(_maxAllocated != Long.MAX_VALUE && _threads != null) {
+				long[] last = _lastAllocated.get();
+				long now = allocatedBytes();
+				long total = _allocated.addAndGet(now-last[0]);
+				last[0] = now;
+				
+				if(total > _maxAllocated)
+					exceed("allocation limit of "+_maxAllocated+" bytes reached");
+			}
+		}
+	}
+	
+	// Marks this budget as exceeded and throws the exception for it
+	private void exceed(String reason) throws BudgetExceededException {
+		String msg = "Execution budget exceeded: "+reason;
+		_exceeded = msg;
+		throw new BudgetExceededException(msg);
+	}
+	
+	// Returns the amount of bytes the current thread has allocated, or 0 if it cannot be measured
+	private static long allocatedBytes() {
+		return _threads == null ? 0 : _threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	private static com.sun.management.ThreadMXBean threadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			
+			if(bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+				if(threads.isThreadAllocatedMemorySupported()) {
+					threads.setThreadAllocatedMemoryEnabled(true);
+					return threads;
+				}
+			}
+		} catch(LinkageError | UnsupportedOperationException | SecurityException e) {
+			// Allocations cannot be measured on this JVM
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,83 @@
+package net.termer.rtflc.runtime;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.instructions.TryInstruction;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Receives events from the runtime it is set on while it executes Rtfl code, for tracing, coverage and debugging tools.
+ * Every event does nothing by default, so listeners only override the events they need.
+ * While a listener is set, functions are interpreted instead of running their compiled bodies so every instruction is reported.
+ * Events are reported on the thread that executes the code, which includes the threads of async blocks, so listeners must be thread-safe.
+ * @author termer
+ * @since 1.3
+ */
+public abstract class ExecutionListener {
+	/**
+	 * Called before an instruction is executed
+	 * @param instruction The instruction
+	 * @param scope The scope the instruction is executed in
+	 * @since 1.3
+	 */
+	public void instructionEnter(RtflInstruction instruction, Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called after an instruction was executed without errors.
+	 * For instructions that open a clause, this is called after their body was executed.
+	 * @param instruction The instruction
+	 * @param scope The scope the instruction was executed in
+	 * @since 1.3
+	 */
+	public void instructionExit(RtflInstruction instruction, Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called before a function is called
+	 * @param name The name the function is called by
+	 * @param function The function
+	 * @param args The arguments passed to the function
+	 * @param scope The scope the function is called in
+	 * @since 1.3
+	 */
+	public void functionCall(String name, RtflFunction function, RtflType[] args, Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called after a function returned without errors
+	 * @param name The name the function was called by
+	 * @param function The function
+	 * @param result The value the function returned
+	 * @param scope The scope the function was called in
+	 * @since 1.3
+	 */
+	public void functionReturn(String name, RtflFunction function, RtflType result, Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called when a new scope is entered, for the body of a clause, a function or a file
+	 * @param scope The new scope
+	 * @since 1.3
+	 */
+	public void scopeDescend(Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called when a scope is left
+	 * @param scope The scope that was left
+	 * @since 1.3
+	 */
+	public void scopeAscend(Scope scope) {
+		// Nothing to do by default
+	}
+	/**
+	 * Called when an error is caught by an `error` block
+	 * @param instruction The instruction of the `error` block
+	 * @param error The error
+	 * @param scope The scope the `error` block is executed in
+	 * @since 1.3
+	 */
+	public void errorCaught(TryInstruction instruction, RuntimeException error, Scope scope) {
+		// Nothing to do by default
+	}
+}
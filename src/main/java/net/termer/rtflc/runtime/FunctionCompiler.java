@@ -0,0 +1,738 @@
+package net.termer.rtflc.runtime;
+
+import java.util.ArrayList;
+
+import net.termer.rtflc.instructions.*;
+import net.termer.rtflc.runtime.RtflRuntime.LocalVar;
+import net.termer.rtflc.type.ArrayType;
+import net.termer.rtflc.type.BoolType;
+import net.termer.rtflc.type.MapType;
+import net.termer.rtflc.type.NumberType;
+import net.termer.rtflc.type.RtflType;
+import net.termer.rtflc.type.StringType;
+import net.termer.rtflc.type.assignment.AssignmentType;
+import net.termer.rtflc.type.assignment.FunctionCallAssignment;
+import net.termer.rtflc.type.assignment.LogicAssignment;
+import net.termer.rtflc.type.assignment.VarRefAssignment;
+import net.termer.rtflc.utils.LogicComparison;
+
+/**
+ * Compiles the bodies of hot InstructionFunctions into trees of Java objects that execute them directly.
+ * Every instruction and value is resolved once into a node specialized for it, so executing a compiled body involves
+ * no opcode dispatch, no instanceof checks to find out how to resolve values, and no function table lookups for call
+ * targets that were already defined when the body was compiled. Since each node only ever calls the same few node
+ * types, the JVM can inline and optimize compiled bodies like ordinary Java code.
+ * Call targets are assumptions: if a function called by a compiled body is redefined or undefined, the body is
+ * invalidated and the function falls back to the interpreter.
+ * Functions are shared by forks of a runtime, so nodes take the runtime from the scope they run in, and calls are only
+ * bound in the runtime the body was compiled in.
+ * @author termer
+ * @since 1.3
+ */
+final class FunctionCompiler {
+	private final RtflRuntime _rt;
+	private final LinkedInstructions _linked;
+	private final CompiledBody _body = new CompiledBody();
+	
+	private FunctionCompiler(RtflRuntime runtime, LinkedInstructions linked) {
+		_rt = runtime;
+		_linked = linked;
+	}
+	
+	/**
+	 * Compiles a function body
+	 * @param runtime The runtime the body is compiled in, whose functions calls are bound to
+	 * @param linked The linked instructions containing the body
+	 * @param start The index of the first instruction of the body
+	 * @param end The index after the last instruction of the body
+	 * @return The compiled body, or null if the body contains instructions that cannot be compiled
+	 * @since 1.3
+	 */
+	static CompiledBody compile(RtflRuntime runtime, LinkedInstructions linked, int start, int end) {
+		for(int i = start; i < end; i++) {
+			switch(linked.opcode(i)) {
+			case Opcodes.FUNC_DEF:
+			case Opcodes.ASYNC:
+			case Opcodes.ASYNC_HANDLE:
+			case Opcodes.DESCEND_SCOPE:
+			case Opcodes.ASCEND_SCOPE:
+			case Opcodes.SWAP_SOURCE:
+				// These depend on the interpreter's handling of scopes and are left to it
+				return null;
+			}
+		}
+		
+		FunctionCompiler compiler = new FunctionCompiler(runtime, linked);
+		compiler._body.root = compiler.block(start, end);
+		
+		return compiler._body;
+	}
+	
+	/**
+	 * A compiled function body
+	 * @author termer
+	 * @since 1.3
+	 */
+	static final class CompiledBody {
+		private Block root = null;
+		// Whether an assumption made while compiling this body no longer holds
+		private volatile boolean _invalid = false;
+		
+		/**
+		 * Executes this body
+		 * @param scope The scope of the function's frame
+		 * @return The value returned by the body, or null if it finished without returning
+		 * @throws RuntimeException If there is an error while executing the body
+		 * @since 1.3
+		 */
+		RtflType run(Scope scope) throws RuntimeException {
+			return root.exec(scope);
+		}
+		/**
+		 * Returns whether this body was invalidated and must no longer be used
+		 * @return Whether this body is invalid
+		 * @since 1.3
+		 */
+		boolean invalid() {
+			return _invalid;
+		}
+		// Invalidates this body, the function will be interpreted again starting with its next invocation
+		void invalidate() {
+			_invalid = true;
+		}
+	}
+	
+	// Compiles a range of instructions into a block
+	private Block block(int start, int end) {
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<RtflInstruction> insts = new ArrayList<RtflInstruction>();
+		RtflInstruction[] instructions = _linked.instructions();
+		
+		for(int i = start; i < end; i++) {
+			RtflInstruction inst = instructions[i];
+			Node node = null;
+			
+			switch(_linked.opcode(i)) {
+			case Opcodes.VAR_DEF: {
+				VarDefInstruction ins = (VarDefInstruction) inst;
+				node = new GlobalDef(ins.variableName(), expr(_linked.values(i)[0]));
+				break;
+			}
+			case Opcodes.VAR_LOCAL_DEF: {
+				VarLocalDefInstruction ins = (VarLocalDefInstruction) inst;
+				node = new LocalDef(_linked.slot(i), ins.variableName(), expr(_linked.values(i)[0]));
+				break;
+			}
+			case Opcodes.VAR_ASSIGN: {
+				VarAssignInstruction ins = (VarAssignInstruction) inst;
+				node = new Assign(_linked.slot(i), ins.variableName(), expr(_linked.values(i)[0]));
+				break;
+			}
+			case Opcodes.VAR_UNDEF:
+				node = new Undef(_linked.slot(i), ((VarUndefInstruction) inst).variableName());
+				break;
+			case Opcodes.FUNC_CALL: {
+				FuncCallInstruction ins = (FuncCallInstruction) inst;
+				node = new CallStatement(call(ins.functionName(), _linked.values(i)), ins);
+				break;
+			}
+			case Opcodes.RETURN:
+				node = new Return(expr(_linked.values(i)[0]));
+				break;
+			case Opcodes.IF: {
+				int clauseEnd = _linked.clauseEnd(i);
+				node = new If(expr(_linked.values(i)[0]), block(i+1, clauseEnd), inst, _linked, i);
+				i = clauseEnd;
+				break;
+			}
+			case Opcodes.WHILE: {
+				int clauseEnd = _linked.clauseEnd(i);
+				node = new While(expr(_linked.values(i)[0]), block(i+1, clauseEnd), inst, _linked, i);
+				i = clauseEnd;
+				break;
+			}
+			case Opcodes.TRY: {
+				int clauseEnd = _linked.clauseEnd(i);
+				node = new Try(_linked.slot(i), ((TryInstruction) inst).variableName(), block(i+1, clauseEnd), inst, _linked, i);
+				i = clauseEnd;
+				break;
+			}
+			case Opcodes.FUNC_UNDEF:
+				node = new FuncUndef(((FuncUndefInstruction) inst).functionName());
+				break;
+			case Opcodes.ARRAY_ASSIGN: {
+				RtflType[] values = _linked.values(i);
+				node = new ArrayAssign(expr(values[0]), expr(values[1]), expr(values[2]), inst);
+				break;
+			}
+			case Opcodes.MAP_ASSIGN: {
+				RtflType[] values = _linked.values(i);
+				node = new MapAssign(expr(values[0]), ((MapAssignInstruction) inst).field(), expr(values[1]), inst);
+				break;
+			}
+			}
+			
+			// End clauses have no effect
+			if(node != null) {
+				nodes.add(node);
+				insts.add(inst);
+			}
+		}
+		
+		return new Block(nodes.toArray(new Node[0]), insts.toArray(new RtflInstruction[0]));
+	}
+	// Compiles a value
+	private Expr expr(RtflType value) {
+		if(value instanceof VarRefAssignment) {
+			VarRefAssignment ref = (VarRefAssignment) value;
+			if(ref.slot() > -1)
+				return new SlotRef(ref.slot(), ref.variableName());
+			else
+				return new NameRef(ref.variableName());
+		} else if(value instanceof FunctionCallAssignment) {
+			FunctionCallAssignment call = (FunctionCallAssignment) value;
+			Call compiled = call(call.functionName(), call.functionArgs());
+			
+			// Lower calls to arithmetic functions into arithmetic operations
+			if(compiled._target instanceof ArithmeticFunction && compiled._args.length == 2)
+				return new Arithmetic(compiled, (ArithmeticFunction) compiled._target);
+			else
+				return compiled;
+		} else if(value instanceof LogicAssignment) {
+			LogicAssignment logic = (LogicAssignment) value;
+			return new Logic(expr(logic.firstValue()), logic.comparisonType(), expr(logic.secondValue()), logic.inverse());
+		} else if(value instanceof AssignmentType) {
+			return new Generic((AssignmentType) value);
+		} else {
+			return new Constant(value);
+		}
+	}
+	// Compiles a function call, binding it to the function currently defined with its name
+	private Call call(String name, RtflType[] args) {
+		Expr[] exprs = new Expr[args.length];
+		for(int i = 0; i < args.length; i++)
+			exprs[i] = expr(args[i]);
+		
+		FunctionTable table = _rt.functions();
+		long version = table.version();
+		
+		return new Call(_body, name, table, table.get(name), version, exprs);
+	}
+	
+	// A compiled instruction
+	private static abstract class Node {
+		// Executes the instruction, returns the value returned by it or null if it did not return
+		abstract RtflType exec(Scope scope) throws RuntimeException;
+	}
+	// A compiled value
+	private static abstract class Expr {
+		abstract RtflType eval(Scope scope) throws RuntimeException;
+	}
+	
+	private static final class Block {
+		private final Node[] _nodes;
+		private final RtflInstruction[] _insts;
+		
+		Block(Node[] nodes, RtflInstruction[] insts) {
+			_nodes = nodes;
+			_insts = insts;
+		}
+		
+		// Executes the block, returns the value returned by it or null if it finished without returning
+		RtflType exec(Scope scope) throws RuntimeException {
+			RuntimeMetrics metrics = scope.runtime().metrics();
+			
+			for(int i = 0; i < _nodes.length; i++) {
+				if(metrics != null)
+					metrics.instruction(_insts[i].opcode());
+				
+				try {
+					// A return ends the block immediately
+					RtflType res = _nodes[i].exec(scope);
+					if(res != null)
+						return res;
+				} catch(RuntimeException e) {
+					// Add cause to exception if not present and throw again
+					if(e.cause() == null)
+						throw e instanceof BudgetExceededException ? new BudgetExceededException(e.getMessage(), _insts[i]) : new RuntimeException(e.getMessage(), _insts[i]);
+					else
+						throw e;
+				}
+			}
+			
+			return null;
+		}
+	}
+	private static final class GlobalDef extends Node {
+		private final String _name;
+		private final Expr _value;
+		
+		GlobalDef(String name, Expr value) {
+			_name = name;
+			_value = value;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			scope.runtime().globalVarables().put(_name, _value.eval(scope));
+			return null;
+		}
+	}
+	private static final class LocalDef extends Node {
+		private final int _slot;
+		private final String _name;
+		private final Expr _value;
+		
+		LocalDef(int slot, String name, Expr value) {
+			_slot = slot;
+			_name = name;
+			_value = value;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			RtflType value = _value.eval(scope);
+			
+			if(_slot > -1)
+				scope.frame()[_slot] = new LocalVar(_name, value);
+			else
+				scope.createLocalVar(_name, value);
+			return null;
+		}
+	}
+	private static final class Assign extends Node {
+		private final int _slot;
+		private final String _name;
+		private final Expr _value;
+		
+		Assign(int slot, String name, Expr value) {
+			_slot = slot;
+			_name = name;
+			_value = value;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			RtflType value = _value.eval(scope);
+			LocalVar var = _slot > -1 ? scope.frame()[_slot] : null;
+			
+			if(var != null)
+				var.assign(value);
+			else
+				scope.assignVar(_name, value);
+			return null;
+		}
+	}
+	private static final class Undef extends Node {
+		private final int _slot;
+		private final String _name;
+		
+		Undef(int slot, String name) {
+			_slot = slot;
+			_name = name;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			if(_slot > -1 && scope.frame()[_slot] != null)
+				scope.frame()[_slot] = null;
+			else
+				scope.undefineVar(_name);
+			return null;
+		}
+	}
+	private static final class CallStatement extends Node {
+		private final Call _call;
+		private final RtflInstruction _inst;
+		
+		CallStatement(Call call, RtflInstruction inst) {
+			_call = call;
+			_inst = inst;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			// Like the interpreter, resolve the function before its arguments
+			Scope callScope = scope.descend(_inst);
+			try {
+				RtflFunction func = _call.target(scope);
+				func.run(_call.args(scope), scope.runtime(), callScope);
+			} finally {
+				callScope.release();
+			}
+			return null;
+		}
+	}
+	private static final class Return extends Node {
+		private final Expr _value;
+		
+		Return(Expr value) {
+			_value = value;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			return _value.eval(scope);
+		}
+	}
+	private static final class If extends Node {
+		private final Expr _cond;
+		private final Block _body;
+		private final RtflInstruction _inst;
+		private final LinkedInstructions _linked;
+		private final int _index;
+		
+		If(Expr cond, Block body, RtflInstruction inst, LinkedInstructions linked, int index) {
+			_cond = cond;
+			_body = body;
+			_inst = inst;
+			_linked = linked;
+			_index = index;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			RtflType cond = _cond.eval(scope);
+			if(!(cond instanceof NumberType))
+				throw new RuntimeException("Non-number/bool value provided for 'if' instruction", _inst);
+			
+			if(((NumberType) cond).toDouble() > 0) {
+				Scope body = scope.descend(_inst);
+				try {
+					return _body.exec(body);
+				} finally {
+					body.release();
+					_linked.releaseBlock(scope.frame(), _index);
+				}
+			}
+			return null;
+		}
+	}
+	private static final class While extends Node {
+		private final Expr _cond;
+		private final Block _body;
+		private final RtflInstruction _inst;
+		private final LinkedInstructions _linked;
+		private final int _index;
+		// Instructions counted against budgets for every iteration
+		private final int _size;
+		
+		While(Expr cond, Block body, RtflInstruction inst, LinkedInstructions linked, int index) {
+			_cond = cond;
+			_body = body;
+			_inst = inst;
+			_linked = linked;
+			_index = index;
+			_size = linked.clauseEnd(index)-index;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			while(true) {
+				RtflType cond = _cond.eval(scope);
+				if(!(cond instanceof NumberType))
+					throw new RuntimeException("Non-number/bool value provided for 'while' instruction", _inst);
+				if(((NumberType) cond).toDouble() <= 0)
+					break;
+				
+				Scope body = scope.descend(_inst);
+				RtflType res;
+				try {
+					res = _body.exec(body);
+				} finally {
+					// Locals defined in the body do not survive to the next iteration
+					body.release();
+					_linked.releaseBlock(scope.frame(), _index);
+				}
+				if(res != null)
+					return res;
+				
+				ExecutionBudget budget = scope.budget();
+				if(budget != null)
+					budget.charge(_size);
+				
+				Profiler profiler = scope.runtime().profiler();
+				if(profiler != null)
+					profiler.line(_inst.originLine());
+			}
+			return null;
+		}
+	}
+	private static final class Try extends Node {
+		private final int _slot;
+		private final String _name;
+		private final Block _body;
+		private final RtflInstruction _inst;
+		private final LinkedInstructions _linked;
+		private final int _index;
+		
+		Try(int slot, String name, Block body, RtflInstruction inst, LinkedInstructions linked, int index) {
+			_slot = slot;
+			_name = name;
+			_body = body;
+			_inst = inst;
+			_linked = linked;
+			_index = index;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			LocalVar var = new LocalVar(_name, new StringType("ok"));
+			scope.frame()[_slot] = var;
+			
+			Scope body = scope.descend(_inst);
+			try {
+				return _body.exec(body);
+			} catch(BudgetExceededException e) {
+				throw e;
+			} catch(RuntimeException e) {
+				var.value = new StringType(e.getMessage());
+			} finally {
+				body.release();
+				_linked.releaseBlock(scope.frame(), _index);
+			}
+			return null;
+		}
+	}
+	private static final class FuncUndef extends Node {
+		private final String _name;
+		
+		FuncUndef(String name) {
+			_name = name;
+		}
+		
+		RtflType exec(Scope scope) {
+			scope.runtime().functions().remove(_name);
+			return null;
+		}
+	}
+	private static final class ArrayAssign extends Node {
+		private final Expr _array;
+		private final Expr _index;
+		private final Expr _value;
+		private final RtflInstruction _inst;
+		
+		ArrayAssign(Expr array, Expr index, Expr value, RtflInstruction inst) {
+			_array = array;
+			_index = index;
+			_value = value;
+			_inst = inst;
+		}
+		
+		RtflType exec(Scope scope) throws RuntimeException {
+			RtflType array = _array.eval(scope);
+			RtflType index = _index.eval(scope);
+			RtflType value = _value.eval(scope);
+			
+			if(!(array instanceof ArrayType))
+				throw new RuntimeException("Cannot get element from non-array", _inst);
+			if(!(index instanceof NumberType))
+				throw new RuntimeException("Provided non-number index");
+			
+			((ArrayType) array).set(((NumberType) index).toInt(), value);
+			return null;
+		}
+	}
+	private static final class MapAssign extends Node {
+		private final Expr _map;
+		private final String _field;
+		private final Expr _value;
+		private final RtflInstruction _inst;
+		
+		MapAssign(Expr map, String field, Expr value, RtflInstruction inst) {
+			_map = map;
+			_field = field;
+			_value = value;
+			_inst = inst;
+		}
+		
+		@SuppressWarnings("unchecked")
+		RtflType exec(Scope scope) throws RuntimeException {
+			RtflType map = _map.eval(scope);
+			RtflType value = _value.eval(scope);
+			
+			if(!(map instanceof MapType))
+				throw new RuntimeException("Cannot get field from non-map", _inst);
+			
+			((MapType) map).put(_field, value);
+			return null;
+		}
+	}
+	
+	private static final class Constant extends Expr {
+		private final RtflType _value;
+		
+		Constant(RtflType value) {
+			_value = value;
+		}
+		
+		RtflType eval(Scope scope) {
+			return _value;
+		}
+	}
+	private static final class SlotRef extends Expr {
+		private final int _slot;
+		private final String _name;
+		
+		SlotRef(int slot, String name) {
+			_slot = slot;
+			_name = name;
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			LocalVar var = scope.frame()[_slot];
+			
+			return var == null ? scope.varValue(_name) : var.value;
+		}
+	}
+	private static final class NameRef extends Expr {
+		private final String _name;
+		
+		NameRef(String name) {
+			_name = name;
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			return scope.varValue(_name);
+		}
+	}
+	private static final class Generic extends Expr {
+		private final AssignmentType _value;
+		
+		Generic(AssignmentType value) {
+			_value = value;
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			return _value.extractValue(scope);
+		}
+	}
+	private static final class Logic extends Expr {
+		private final Expr _left;
+		private final LogicComparison _comp;
+		private final Expr _right;
+		private final boolean _inverse;
+		
+		Logic(Expr left, LogicComparison comp, Expr right, boolean inverse) {
+			_left = left;
+			_comp = comp;
+			_right = right;
+			_inverse = inverse;
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			RtflType l = _left.eval(scope);
+			RtflType r = _right.eval(scope);
+			boolean val = false;
+			
+			if(_comp == LogicComparison.EQUAL) {
+				val = l.equals(r, scope);
+			} else if(l instanceof NumberType && r instanceof NumberType) {
+				double ld = ((NumberType) l).toDouble();
+				double rd = ((NumberType) r).toDouble();
+				
+				switch(_comp) {
+				case AND:
+					val = ld > 0 && rd > 0;
+					break;
+				case OR:
+					val = ld > 0 || rd > 0;
+					break;
+				case GREATER:
+					val = ld > rd;
+					break;
+				case LESS:
+					val = ld < rd;
+					break;
+				default:
+					val = false;
+				}
+			}
+			
+			return BoolType.of(val != _inverse);
+		}
+	}
+	private static final class Call extends Expr {
+		private final CompiledBody _owner;
+		private final String _name;
+		// The function table of the runtime the body was compiled in
+		private final FunctionTable _table;
+		// The function this call was bound to when it was compiled, null if it was not defined yet
+		private final RtflFunction _target;
+		// The function table version the binding was last checked at
+		private volatile long _version;
+		private final Expr[] _args;
+		
+		Call(CompiledBody owner, String name, FunctionTable table, RtflFunction target, long version, Expr[] args) {
+			_owner = owner;
+			_name = name;
+			_table = table;
+			_target = target;
+			_version = version;
+			_args = args;
+		}
+		
+		// Returns the function to call, invalidating the compiled body if the function it was bound to was replaced
+		RtflFunction target(Scope scope) throws RuntimeException {
+			RtflRuntime rt = scope.runtime();
+			RuntimeMetrics metrics = rt.metrics();
+			if(metrics != null)
+				metrics.call(_name);
+			
+			// Other runtimes, like forks of the one the body was compiled in, may define the function differently
+			FunctionTable table = rt.functions();
+			if(_target == null || table != _table || scope.hasRestrictions())
+				return scope.function(_name);
+			
+			long version = table.version();
+			if(version != _version) {
+				if(table.get(_name) != _target) {
+					_owner.invalidate();
+					return scope.function(_name);
+				}
+				
+				// Only other functions changed
+				_version = version;
+			}
+			
+			return _target;
+		}
+		RtflType[] args(Scope scope) throws RuntimeException {
+			RtflType[] args = new RtflType[_args.length];
+			for(int i = 0; i < _args.length; i++)
+				args[i] = _args[i].eval(scope);
+			
+			return args;
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			// Like FunctionCallAssignment, resolve the arguments before the function
+			RtflType[] args = args(scope);
+			return invoke(target(scope), args, scope);
+		}
+		RtflType invoke(RtflFunction func, RtflType[] args, Scope scope) throws RuntimeException {
+			Scope callScope = scope.descend(null);
+			try {
+				return func.run(args, scope.runtime(), callScope);
+			} finally {
+				callScope.release();
+			}
+		}
+	}
+	private static final class Arithmetic extends Expr {
+		private final Call _call;
+		private final ArithmeticFunction _func;
+		private final Expr _left;
+		private final Expr _right;
+		
+		Arithmetic(Call call, ArithmeticFunction func) {
+			_call = call;
+			_func = func;
+			_left = call._args[0];
+			_right = call._args[1];
+		}
+		
+		RtflType eval(Scope scope) throws RuntimeException {
+			RtflType l = _left.eval(scope);
+			RtflType r = _right.eval(scope);
+			
+			// Fall back to a normal call if the function was replaced
+			RtflFunction func = _call.target(scope);
+			if(func == _func)
+				return _func.apply(l, r);
+			else
+				return _call.invoke(func, new RtflType[] { l, r }, scope);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package net.termer.rtflc.runtime;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map of function names to functions that keeps a version number, which changes every time a function is defined, replaced or removed.
+ * Call sites use the version to cache the function they resolved, so a cached function only has to be looked up again after the table changes.
+ * Entries removed through an iterator of one of the map's views do not change the version.
+ * @author termer
+ * @since 1.3
+ */
+public class FunctionTable extends ConcurrentHashMap<String, RtflFunction> {
+	private final AtomicLong _version = new AtomicLong();
+	
+	/**
+	 * Returns the current version of this table
+	 * @return The current version
+	 * @since 1.3
+	 */
+	public long version() {
+		return _version.get();
+	}
+	
+	public RtflFunction put(String key, RtflFunction value) {
+		RtflFunction prev = super.put(key, value);
+		_version.incrementAndGet();
+		return prev;
+	}
+	public void putAll(Map<? extends String, ? extends RtflFunction> map) {
+		for(Map.Entry<? extends String, ? extends RtflFunction> entry : map.entrySet())
+			super.put(entry.getKey(), entry.getValue());
+		_version.incrementAndGet();
+	}
+	/**
+	 * Replaces all functions in this table with the functions of another table
+	 * @param table The table to copy
+	 * @since 1.3
+	 */
+	void copyFrom(Map<String, RtflFunction> table) {
+		super.clear();
+		for(Map.Entry<String, RtflFunction> entry : table.entrySet())
+			super.put(entry.getKey(), entry.getValue());
+		_version.incrementAndGet();
+	}
+	public RtflFunction putIfAbsent(String key, RtflFunction value) {
+		RtflFunction prev = super.putIfAbsent(key, value);
+		if(prev == null)
+			_version.incrementAndGet();
+		return prev;
+	}
+	public RtflFunction remove(Object key) {
+		RtflFunction prev = super.remove(key);
+		if(prev != null)
+			_version.incrementAndGet();
+		return prev;
+	}
+	public boolean remove(Object key, Object value) {
+		boolean removed = super.remove(key, value);
+		if(removed)
+			_version.incrementAndGet();
+		return removed;
+	}
+	public RtflFunction replace(String key, RtflFunction value) {
+		RtflFunction prev = super.replace(key, value);
+		if(prev != null)
+			_version.incrementAndGet();
+		return prev;
+	}
+	public boolean replace(String key, RtflFunction oldValue, RtflFunction newValue) {
+		boolean replaced = super.replace(key, oldValue, newValue);
+		if(replaced)
+			_version.incrementAndGet();
+		return replaced;
+	}
+	public void replaceAll(BiFunction<? super String, ? super RtflFunction, ? extends RtflFunction> function) {
+		super.replaceAll(function);
+		_version.incrementAndGet();
+	}
+	public RtflFunction compute(String key, BiFunction<? super String, ? super RtflFunction, ? extends RtflFunction> function) {
+		RtflFunction res = super.compute(key, function);
+		_version.incrementAndGet();
+		return res;
+	}
+	public RtflFunction computeIfAbsent(String key, Function<? super String, ? extends RtflFunction> function) {
+		RtflFunction res = super.computeIfAbsent(key, function);
+		_version.incrementAndGet();
+		return res;
+	}
+	public RtflFunction computeIfPresent(String key, BiFunction<? super String, ? super RtflFunction, ? extends RtflFunction> function) {
+		RtflFunction res = super.computeIfPresent(key, function);
+		_version.incrementAndGet();
+		return res;
+	}
+	public RtflFunction merge(String key, RtflFunction value, BiFunction<? super RtflFunction, ? super RtflFunction, ? extends RtflFunction> function) {
+		RtflFunction res = super.merge(key, value, function);
+		_version.incrementAndGet();
+		return res;
+	}
+	public void clear() {
+		super.clear();
+		_version.incrementAndGet();
+	}
+	
+	private static final long serialVersionUID = 1L;
+}
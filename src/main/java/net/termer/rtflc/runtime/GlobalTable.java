@@ -0,0 +1,61 @@
+package net.termer.rtflc.runtime;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Map of global variable names to values that shares every value stored in it.
+ * Global variables are reachable from every thread, so maps and arrays stored in them have to be shared, no matter whether they were stored by a script or by Java code.
+ * @author termer
+ * @since 1.3
+ */
+public class GlobalTable extends ConcurrentHashMap<String, RtflType> {
+	public RtflType put(String key, RtflType value) {
+		RtflType.share(value);
+		return super.put(key, value);
+	}
+	public void putAll(Map<? extends String, ? extends RtflType> map) {
+		for(Map.Entry<? extends String, ? extends RtflType> entry : map.entrySet())
+			put(entry.getKey(), entry.getValue());
+	}
+	public RtflType putIfAbsent(String key, RtflType value) {
+		RtflType.share(value);
+		return super.putIfAbsent(key, value);
+	}
+	public RtflType replace(String key, RtflType value) {
+		RtflType.share(value);
+		return super.replace(key, value);
+	}
+	public boolean replace(String key, RtflType oldValue, RtflType newValue) {
+		RtflType.share(newValue);
+		return super.replace(key, oldValue, newValue);
+	}
+	public void replaceAll(BiFunction<? super String, ? super RtflType, ? extends RtflType> function) {
+		super.replaceAll((key, value) -> shared(function.apply(key, value)));
+	}
+	public RtflType compute(String key, BiFunction<? super String, ? super RtflType, ? extends RtflType> function) {
+		return super.compute(key, (k, value) -> shared(function.apply(k, value)));
+	}
+	public RtflType computeIfAbsent(String key, Function<? super String, ? extends RtflType> function) {
+		return super.computeIfAbsent(key, k -> shared(function.apply(k)));
+	}
+	public RtflType computeIfPresent(String key, BiFunction<? super String, ? super RtflType, ? extends RtflType> function) {
+		return super.computeIfPresent(key, (k, value) -> shared(function.apply(k, value)));
+	}
+	public RtflType merge(String key, RtflType value, BiFunction<? super RtflType, ? super RtflType, ? extends RtflType> function) {
+		RtflType.share(value);
+		return super.merge(key, value, (old, val) -> shared(function.apply(old, val)));
+	}
+	
+	// Shares a value computed by a mapping function before it is stored
+	private static RtflType shared(RtflType value) {
+		RtflType.share(value);
+		return value;
+	}
+	
+	private static final long serialVersionUID = 1L;
+}
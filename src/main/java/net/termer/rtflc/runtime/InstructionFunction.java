@@ -1,18 +1,48 @@
 package net.termer.rtflc.runtime;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.termer.rtflc.instructions.FuncDefInstruction;
 import net.termer.rtflc.instructions.RtflInstruction;
-import net.termer.rtflc.type.IntType;
+import net.termer.rtflc.type.NullType;
 import net.termer.rtflc.type.RtflType;
 import net.termer.rtflc.runtime.RtflRuntime;
+import net.termer.rtflc.runtime.FunctionCompiler.CompiledBody;
+import net.termer.rtflc.runtime.RtflRuntime.LocalVar;
 
 /**
- * Function that contains RtflInstruction objects to execute
+ * Function that contains RtflInstruction objects to execute.
+ * Functions are interpreted until their invocations and loop iterations reach the runtime's compile threshold, after which they are compiled.
  * @author termer
  * @since 1.0
  */
 public class InstructionFunction implements RtflFunction {
-	private RtflInstruction[] insts = null;
+	private LinkedInstructions insts = null;
+	private int start = 0;
+	private int end = 0;
 	private String[] argNames = {};
+	private int frameSize = 0;
+	// Invocations and loop iterations since the function was last compiled
+	private final AtomicInteger invocations = new AtomicInteger();
+	private volatile int iterationsBase = 0;
+	// The compiled body, if the function was compiled
+	private final AtomicReference<CompiledBody> compiled = new AtomicReference<CompiledBody>();
+	// Compilation state, only the thread that moves the state from INTERPRETED to COMPILING compiles the function
+	private final AtomicInteger state = new AtomicInteger(INTERPRETED);
+	// Only changed by the thread that took the invalid compiled body out of the function
+	private int deoptimizations = 0;
+	// Frame shown for this function by profilers, created when it is first profiled
+	private Profiler.Frame profileFrame = null;
+	
+	// Maximum amount of times a function falls back to the interpreter before it is no longer compiled
+	private static final int MAX_DEOPTIMIZATIONS = 4;
+	
+	// Compilation states
+	private static final int INTERPRETED = 0;
+	private static final int COMPILING = 1;
+	private static final int COMPILED = 2;
+	private static final int UNCOMPILABLE = 3;
 	
 	/**
 	 * Instantiates a new InstructionFunction with the provided instructions
@@ -20,7 +50,10 @@ public class InstructionFunction implements RtflFunction {
 	 * @since 1.0
 	 */
 	public InstructionFunction(RtflInstruction[] instructions) {
-		insts = instructions;
+		// Linked separately from other executions of the array, so only this function's loops count towards compiling it
+		insts = new LinkedInstructions(instructions);
+		end = insts.length();
+		frameSize = insts.frameSize();
 	}
 	/**
 	 * Instantiates a new InstructionFunction with the provided instructions and argument names
@@ -29,32 +62,124 @@ public class InstructionFunction implements RtflFunction {
 	 * @since 1.0
 	 */
 	public InstructionFunction(RtflInstruction[] instructions, String[] argumentNames) {
+		insts = new LinkedInstructions(instructions, argumentNames);
+		end = insts.length();
+		argNames = argumentNames;
+		frameSize = insts.frameSize();
+	}
+	/**
+	 * Instantiates a new InstructionFunction whose body is a range of already linked instructions
+	 * @param instructions the linked instructions containing this function's body
+	 * @param bodyStart the index of the first instruction of the body, directly after its FuncDefInstruction
+	 * @param bodyEnd the index after the last instruction of the body
+	 * @param argumentNames The names of this function's arguments
+	 * @since 1.3
+	 */
+	public InstructionFunction(LinkedInstructions instructions, int bodyStart, int bodyEnd, String[] argumentNames) {
 		insts = instructions;
+		start = bodyStart;
+		end = bodyEnd;
 		argNames = argumentNames;
+		frameSize = instructions.frameSize(bodyStart-1);
+	}
+	
+	public RtflType run(RtflType[] args, RtflRuntime rt, Scope callScope) throws RuntimeException {
+		ExecutionBudget budget = callScope.budget();
+		if(budget != null)
+			budget.charge(end-start);
+		
+		Profiler profiler = rt.profiler();
+		if(profiler != null)
+			profiler.enter(profileFrame(), callScope.cause());
+		
+		Scope scope = callScope.descendFrame(frameSize, callScope.cause());
+		LocalVar[] frame = scope.frame();
+		
+		// Bind arguments, named arguments occupy the first slots of the frame
+		int named = Math.min(args.length, argNames.length);
+		for(int i = 0; i < named; i++)
+			frame[i] = new LocalVar(argNames[i], args[i]);
+		scope.bindArguments(args);
+		
+		try {
+			CompiledBody body = compiled.get();
+			
+			if(body != null && body.invalid()) {
+				// An assumption of the compiled body broke, fall back to the interpreter
+				deoptimize(body);
+				body = null;
+			}
+			if(body == null && state.get() == INTERPRETED && rt.compileThreshold() > 0 && invocations.incrementAndGet()+iterations()-iterationsBase >= rt.compileThreshold())
+				body = compile(rt);
+			
+			// Listeners are only notified by the interpreter
+			ExecutionListener listener = scope.listener();
+			if(listener != null)
+				listener.scopeDescend(scope);
+			
+			RtflType res;
+			try {
+				res = body == null || listener != null ? rt.execute(insts, start, end, scope) : body.run(scope);
+			} finally {
+				if(listener != null)
+					listener.scopeAscend(scope);
+			}
+			return res == null ? NullType.INSTANCE : res;
+		} finally {
+			// Undefine argument variables
+			scope.release();
+			
+			if(profiler != null)
+				profiler.exit();
+		}
 	}
 	
-	public RtflType run(RtflType[] args, RtflRuntime rt, Scope scope) throws RuntimeException {
-		// Define argument variables
-		for(int i = 0; i < args.length; i++) {
-			if(i < argNames.length)
-				scope.createLocalVar(argNames[i], args[i]);
-			scope.createLocalVar("arg"+(i+1), args[i]);
+	// Returns the frame shown for this function by profilers
+	private Profiler.Frame profileFrame() {
+		if(profileFrame == null) {
+			RtflInstruction def = start > 0 ? insts.instructions()[start-1] : null;
+			
+			if(def instanceof FuncDefInstruction)
+				profileFrame = new Profiler.Frame(((FuncDefInstruction) def).functionName(), def.originFile(), def.originLine());
+			else if(end > start)
+				profileFrame = new Profiler.Frame("<anonymous>", insts.instructions()[start].originFile(), insts.instructions()[start].originLine());
+			else
+				profileFrame = new Profiler.Frame("<anonymous>", "unknown", 0);
 		}
-		scope.createLocalVar("arglen", new IntType(args.length));
-		
-		RtflType val = rt.execute(insts, scope);
-		
-		// Undefine argument variables
-		for(int i = 0; i < args.length; i++) {
-			if(i < argNames.length)
-				if(scope.variableAliases().containsKey(argNames[i]))
-					scope.undefineVar(argNames[i]);
-			String vname = "arg"+(i+1);
-			if(scope.variableAliases().containsKey(vname))
-				scope.undefineVar(vname);
+		
+		return profileFrame;
+	}
+	
+	// Compiles the body, returns null if another thread is compiling it or it cannot be compiled
+	private CompiledBody compile(RtflRuntime rt) {
+		if(!state.compareAndSet(INTERPRETED, COMPILING))
+			return compiled.get();
+		
+		CompiledBody body = null;
+		try {
+			body = FunctionCompiler.compile(rt, insts, start, end);
+		} finally {
+			if(body == null) {
+				state.set(UNCOMPILABLE);
+			} else {
+				compiled.set(body);
+				state.set(COMPILED);
+			}
 		}
-		if(scope.variableAliases().containsKey("arglen"))
-			scope.undefineVar("arglen");
-		return val;
+		
+		return body;
+	}
+	// Takes an invalid compiled body out of the function, only the first thread to see it invalid does so
+	private void deoptimize(CompiledBody body) {
+		if(!compiled.compareAndSet(body, null))
+			return;
+		
+		invocations.set(0);
+		iterationsBase = iterations();
+		state.set(++deoptimizations >= MAX_DEOPTIMIZATIONS ? UNCOMPILABLE : INTERPRETED);
+	}
+	// Returns the amount of loop iterations run by the body, not counting nested functions
+	private int iterations() {
+		return insts.backEdges(start-1);
 	}
 }
@@ -0,0 +1,473 @@
+package net.termer.rtflc.runtime;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.termer.rtflc.instructions.*;
+import net.termer.rtflc.runtime.RtflRuntime.LocalVar;
+import net.termer.rtflc.type.RtflType;
+import net.termer.rtflc.type.assignment.ArrayIndexAssignment;
+import net.termer.rtflc.type.assignment.FunctionCallAssignment;
+import net.termer.rtflc.type.assignment.LogicAssignment;
+import net.termer.rtflc.type.assignment.MapFieldAssignment;
+import net.termer.rtflc.type.assignment.NotAssignment;
+import net.termer.rtflc.type.assignment.VarRefAssignment;
+
+/**
+ * An array of instructions that has been linked for execution.
+ * Linking resolves every clause opener to the index of its matching EndClauseInstruction once,
+ * so executing a clause body never requires scanning for its end or copying it into a new array.
+ * Linking also resolves local variables: every local variable definition, error variable and function argument
+ * is given a slot in the frame of the function (or top level code) containing it, and every reference to a
+ * local variable that is visible where it appears is resolved to that slot.
+ * References are resolved into copies of the instructions' values kept by the link, so the instructions
+ * themselves are never modified and can be linked any amount of times.
+ * @author termer
+ * @since 1.3
+ */
+public class LinkedInstructions {
+	private final RtflInstruction[] _insts;
+	// Opcode of every instruction, cached for dispatch
+	private final int[] _ops;
+	// Index of the matching EndClauseInstruction for every clause opener, -1 for all other instructions
+	private final int[] _ends;
+	// Frame slot of the variable defined, assigned or undefined by every instruction, -1 if not resolved
+	private final int[] _slots;
+	// Values of every instruction with their variable references resolved to frame slots, in the order listed by values(int)
+	private final RtflType[][] _values;
+	// Frame sizes of function bodies, indexed by their FuncDefInstruction
+	private final int[] _frameSizes;
+	// Range of frame slots used by every block, indexed by the instruction that opened it (or ascended out of it)
+	private final int[] _blockStarts;
+	private final int[] _blockEnds;
+	// Frame size of the top level instructions
+	private final int _frameSize;
+	// Index of the FuncDefInstruction of the function containing every while loop, -1 for loops in top level code
+	private final int[] _loopFunctions;
+	// Amount of loop iterations run by every function body, indexed by its FuncDefInstruction plus one, top level code first
+	private final int[] _backEdges;
+	// Inline caches of every function call instruction
+	private final CallSite[] _calls;
+	
+	// Instructions linked by link(), arrays compare by identity and their links are dropped when memory runs low
+	private static final Map<RtflInstruction[], SoftReference<LinkedInstructions>> _cache = Collections.synchronizedMap(new WeakHashMap<RtflInstruction[], SoftReference<LinkedInstructions>>());
+	
+	/**
+	 * Links the provided instructions
+	 * @param instructions The instructions to link
+	 * @since 1.3
+	 */
+	public LinkedInstructions(RtflInstruction[] instructions) {
+		this(instructions, new String[0]);
+	}
+	/**
+	 * Links the provided instructions as the body of a function with the provided argument names.
+	 * The arguments occupy the first slots of the frame, in order.
+	 * @param instructions The instructions to link
+	 * @param argumentNames The names of the function's arguments
+	 * @since 1.3
+	 */
+	public LinkedInstructions(RtflInstruction[] instructions, String[] argumentNames) {
+		_insts = instructions;
+		_ops = new int[instructions.length];
+		_ends = new int[instructions.length];
+		_slots = new int[instructions.length];
+		_values = new RtflType[instructions.length][];
+		_frameSizes = new int[instructions.length];
+		_blockStarts = new int[instructions.length];
+		_blockEnds = new int[instructions.length];
+		_loopFunctions = new int[instructions.length];
+		_backEdges = new int[instructions.length+1];
+		_calls = new CallSite[instructions.length];
+		
+		// Stack of clause openers that have not been closed yet
+		int[] open = new int[8];
+		int depth = 0;
+		
+		for(int i = 0; i < instructions.length; i++) {
+			RtflInstruction inst = instructions[i];
+			_ops[i] = inst.opcode();
+			_ends[i] = -1;
+			_slots[i] = -1;
+			
+			if(inst instanceof FuncCallInstruction)
+				_calls[i] = new CallSite(((FuncCallInstruction) inst).functionName());
+			if(inst instanceof WhileInstruction) {
+				// Iterations count towards the innermost function containing the loop
+				int func = -1;
+				for(int j = depth-1; j >= 0 && func < 0; j--)
+					if(_ops[open[j]] == Opcodes.FUNC_DEF)
+						func = open[j];
+				_loopFunctions[i] = func;
+			}
+			if(inst instanceof ClauseOpenerInstruction) {
+				if(depth == open.length) {
+					int[] tmp = new int[open.length*2];
+					System.arraycopy(open, 0, tmp, 0, open.length);
+					open = tmp;
+				}
+				open[depth++] = i;
+			} else if(inst instanceof EndClauseInstruction && depth > 0) {
+				_ends[open[--depth]] = i;
+			}
+		}
+		
+		// Clauses that are never closed run until the end of the instructions
+		while(depth > 0)
+			_ends[open[--depth]] = instructions.length;
+		
+		_frameSize = resolveFrame(0, instructions.length, argumentNames);
+	}
+	
+	/**
+	 * Returns the provided instructions linked.
+	 * Arrays are only linked the first time they are passed to this method, so they must not be modified afterwards.
+	 * @param instructions The instructions to link
+	 * @return The linked instructions
+	 * @since 1.3
+	 */
+	public static LinkedInstructions link(RtflInstruction[] instructions) {
+		SoftReference<LinkedInstructions> ref = _cache.get(instructions);
+		LinkedInstructions linked = ref == null ? null : ref.get();
+		
+		if(linked == null) {
+			linked = new LinkedInstructions(instructions);
+			_cache.put(instructions, new SoftReference<LinkedInstructions>(linked));
+		}
+		
+		return linked;
+	}
+	
+	/**
+	 * Returns the linked instructions
+	 * @return The linked instructions
+	 * @since 1.3
+	 */
+	public RtflInstruction[] instructions() {
+		return _insts;
+	}
+	/**
+	 * Returns the amount of linked instructions
+	 * @return The amount of linked instructions
+	 * @since 1.3
+	 */
+	public int length() {
+		return _insts.length;
+	}
+	/**
+	 * Returns the opcode of the instruction at the specified index
+	 * @param index The index of the instruction
+	 * @return The instruction's opcode
+	 * @since 1.3
+	 */
+	public int opcode(int index) {
+		return _ops[index];
+	}
+	/**
+	 * Returns the index of the EndClauseInstruction that closes the clause opened at the specified index.
+	 * Clauses that are never closed end at length().
+	 * @param index The index of the clause opener
+	 * @return The index of the clause's end, or -1 if the instruction at the specified index is not a clause opener
+	 * @since 1.3
+	 */
+	public int clauseEnd(int index) {
+		return _ends[index];
+	}
+	/**
+	 * Returns the frame slot of the local variable that the instruction at the specified index defines, assigns or undefines
+	 * @param index The index of the instruction
+	 * @return The frame slot, or -1 if the variable is not a local visible at that point
+	 * @since 1.3
+	 */
+	public int slot(int index) {
+		return _slots[index];
+	}
+	/**
+	 * Returns the values of the instruction at the specified index, with the references to local variables visible there resolved to frame slots.
+	 * Values are in the order the instruction takes them: the value of a VarDefInstruction, VarLocalDefInstruction, VarAssignInstruction or ReturnInstruction,
+	 * the condition of an IfInstruction or WhileInstruction, the arguments of a FuncCallInstruction,
+	 * the array, index and value of an ArrayAssignInstruction, or the map and value of a MapAssignInstruction.
+	 * @param index The index of the instruction
+	 * @return The instruction's values, or null if the instruction has none
+	 * @since 1.3
+	 */
+	public RtflType[] values(int index) {
+		return _values[index];
+	}
+	/**
+	 * Returns the inline cache of the function call instruction at the specified index
+	 * @param index The index of the FuncCallInstruction
+	 * @return The instruction's call site, or null if the instruction is not a function call
+	 * @since 1.3
+	 */
+	public CallSite callSite(int index) {
+		return _calls[index];
+	}
+	/**
+	 * Returns the amount of frame slots needed to execute the top level instructions
+	 * @return The top level frame size
+	 * @since 1.3
+	 */
+	public int frameSize() {
+		return _frameSize;
+	}
+	/**
+	 * Returns the amount of frame slots needed to execute the body of the function defined at the specified index
+	 * @param index The index of the FuncDefInstruction
+	 * @return The function body's frame size
+	 * @since 1.3
+	 */
+	public int frameSize(int index) {
+		return _frameSizes[index];
+	}
+	
+	/**
+	 * Returns the amount of loop iterations run directly in the body of the function defined at the specified index.
+	 * Iterations of loops in functions nested in the body are not counted.
+	 * The count is not exact when the body runs on multiple threads at once.
+	 * @param index The index of the FuncDefInstruction, or -1 for the top level instructions
+	 * @return The amount of iterations run
+	 * @since 1.3
+	 */
+	public int backEdges(int index) {
+		return _backEdges[index+1];
+	}
+	// Counts an iteration of the while loop at the specified index
+	void backEdge(int index) {
+		_backEdges[_loopFunctions[index]+1]++;
+	}
+	
+	/**
+	 * Releases all local variables defined in the block opened (or ascended out of) at the specified index
+	 * @param frame The frame the block was executed in
+	 * @param index The index of the instruction that opened the block, or of the AscendScopeInstruction that closed it
+	 * @since 1.3
+	 */
+	void releaseBlock(LocalVar[] frame, int index) {
+		int end = Math.min(_blockEnds[index], frame.length);
+		
+		if(end > _blockStarts[index])
+			Arrays.fill(frame, _blockStarts[index], end, null);
+	}
+	
+	// Assigns slots to all local variables defined in a function body (or top level code) and returns its frame size
+	private int resolveFrame(int start, int end, String[] params) {
+		ArrayList<Block> blocks = new ArrayList<Block>();
+		Block top = new Block(-1, 0);
+		blocks.add(top);
+		
+		// Argument i always occupies slot i, the last argument with a repeated name wins
+		for(String param : params)
+			top.names.put(param, top.next++);
+		top.high = top.next;
+		
+		for(int i = start; i < end; i++) {
+			RtflInstruction inst = _insts[i];
+			Block block = blocks.get(blocks.size()-1);
+			
+			switch(_ops[i]) {
+			case Opcodes.VAR_DEF:
+				_values[i] = new RtflType[] { resolveValue(((VarDefInstruction) inst).variableValue(), blocks) };
+				break;
+			case Opcodes.VAR_LOCAL_DEF: {
+				VarLocalDefInstruction ins = (VarLocalDefInstruction) inst;
+				
+				// The value is resolved before the new variable becomes visible
+				_values[i] = new RtflType[] { resolveValue(ins.variableValue(), blocks) };
+				_slots[i] = block.declare(ins.variableName());
+				break;
+			}
+			case Opcodes.VAR_ASSIGN: {
+				VarAssignInstruction ins = (VarAssignInstruction) inst;
+				
+				_values[i] = new RtflType[] { resolveValue(ins.assignValue(), blocks) };
+				_slots[i] = lookup(ins.variableName(), blocks);
+				break;
+			}
+			case Opcodes.VAR_UNDEF:
+				_slots[i] = lookup(((VarUndefInstruction) inst).variableName(), blocks);
+				break;
+			case Opcodes.FUNC_CALL:
+				_values[i] = resolveValues(((FuncCallInstruction) inst).functionArguments(), blocks);
+				break;
+			case Opcodes.RETURN:
+				_values[i] = new RtflType[] { resolveValue(((ReturnInstruction) inst).returnValue(), blocks) };
+				break;
+			case Opcodes.IF:
+				_values[i] = new RtflType[] { resolveValue(((IfInstruction) inst).condition(), blocks) };
+				blocks.add(new Block(i, block.next));
+				break;
+			case Opcodes.WHILE:
+				_values[i] = new RtflType[] { resolveValue(((WhileInstruction) inst).condition(), blocks) };
+				blocks.add(new Block(i, block.next));
+				break;
+			case Opcodes.TRY:
+				// The error variable is defined in the enclosing block
+				_slots[i] = block.declare(((TryInstruction) inst).variableName());
+				blocks.add(new Block(i, block.next));
+				break;
+			case Opcodes.ASYNC_HANDLE:
+				// The handle variable is defined in the enclosing block
+				_slots[i] = block.declare(((AsyncInstruction) inst).variableName());
+				blocks.add(new Block(i, block.next));
+				break;
+			case Opcodes.ASYNC:
+			case Opcodes.DESCEND_SCOPE:
+				blocks.add(new Block(i, block.next));
+				break;
+			case Opcodes.FUNC_DEF: {
+				// Function bodies get their own frames
+				int bodyEnd = Math.min(_ends[i], end);
+				_frameSizes[i] = resolveFrame(i+1, bodyEnd, ((FuncDefInstruction) inst).argumentNames());
+				i = bodyEnd;
+				break;
+			}
+			case Opcodes.END_CLAUSE:
+			case Opcodes.ASCEND_SCOPE:
+				if(blocks.size() > 1) {
+					blocks.remove(blocks.size()-1);
+					Block parent = blocks.get(blocks.size()-1);
+					
+					// Record the slots used by the block so they can be released when it exits
+					_blockStarts[block.opener] = block.start;
+					_blockEnds[block.opener] = block.high;
+					_blockStarts[i] = block.start;
+					_blockEnds[i] = block.high;
+					
+					parent.high = Math.max(parent.high, block.high);
+				}
+				break;
+			case Opcodes.ARRAY_ASSIGN: {
+				ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
+				
+				_values[i] = new RtflType[] {
+					resolveValue(ins.array(), blocks),
+					resolveValue(ins.index(), blocks),
+					resolveValue(ins.assignValue(), blocks)
+				};
+				break;
+			}
+			case Opcodes.MAP_ASSIGN: {
+				MapAssignInstruction ins = (MapAssignInstruction) inst;
+				
+				_values[i] = new RtflType[] {
+					resolveValue(ins.map(), blocks),
+					resolveValue(ins.assignValue(), blocks)
+				};
+				break;
+			}
+			}
+		}
+		
+		// Blocks that are never closed keep their slots until the frame is discarded
+		for(int i = blocks.size()-1; i > 0; i--)
+			blocks.get(i-1).high = Math.max(blocks.get(i-1).high, blocks.get(i).high);
+		
+		return top.high;
+	}
+	// Returns the value with all variable references it contains resolved to frame slots.
+	// Only the parts of the value that contain resolved references are copied, the rest is shared with the instruction.
+	private RtflType resolveValue(RtflType value, ArrayList<Block> blocks) {
+		if(value instanceof VarRefAssignment) {
+			VarRefAssignment ref = (VarRefAssignment) value;
+			int slot = lookup(ref.variableName(), blocks);
+			
+			return slot < 0 ? ref : new VarRefAssignment(ref.variableName(), slot);
+		} else if(value instanceof FunctionCallAssignment) {
+			FunctionCallAssignment call = (FunctionCallAssignment) value;
+			RtflType[] args = resolveValues(call.functionArgs(), blocks);
+			
+			return args == call.functionArgs() ? call : new FunctionCallAssignment(call.functionName(), args);
+		} else if(value instanceof LogicAssignment) {
+			LogicAssignment logic = (LogicAssignment) value;
+			RtflType first = resolveValue(logic.firstValue(), blocks);
+			RtflType second = resolveValue(logic.secondValue(), blocks);
+			
+			if(first == logic.firstValue() && second == logic.secondValue())
+				return logic;
+			return new LogicAssignment(first, logic.comparisonType(), second, logic.inverse());
+		} else if(value instanceof NotAssignment) {
+			RtflType original = ((NotAssignment) value).originalValue();
+			RtflType resolved = resolveValue(original, blocks);
+			
+			return resolved == original ? value : new NotAssignment(resolved);
+		} else if(value instanceof ArrayIndexAssignment) {
+			ArrayIndexAssignment access = (ArrayIndexAssignment) value;
+			RtflType array = resolveValue(access.array(), blocks);
+			RtflType index = resolveValue(access.index(), blocks);
+			
+			if(array == access.array() && index == access.index())
+				return access;
+			return new ArrayIndexAssignment(array, index);
+		} else if(value instanceof MapFieldAssignment) {
+			MapFieldAssignment access = (MapFieldAssignment) value;
+			RtflType map = resolveValue(access.map(), blocks);
+			
+			return map == access.map() ? access : new MapFieldAssignment(map, access.field());
+		}
+		
+		return value;
+	}
+	// Plural version of resolveValue(), returns the same array if none of the values contain resolved references
+	private RtflType[] resolveValues(RtflType[] values, ArrayList<Block> blocks) {
+		RtflType[] res = values;
+		
+		for(int i = 0; i < values.length; i++) {
+			RtflType resolved = resolveValue(values[i], blocks);
+			
+			if(resolved != values[i]) {
+				if(res == values)
+					res = values.clone();
+				res[i] = resolved;
+			}
+		}
+		
+		return res;
+	}
+	// Returns the slot of the innermost visible local variable with the specified name, -1 if there is none
+	private int lookup(String name, ArrayList<Block> blocks) {
+		for(int i = blocks.size()-1; i >= 0; i--) {
+			Integer slot = blocks.get(i).names.get(name);
+			if(slot != null)
+				return slot;
+		}
+		return -1;
+	}
+	
+	// A block of instructions being resolved
+	private static class Block {
+		// The instruction that opened this block, -1 for the top level
+		final int opener;
+		// The first slot available to this block
+		final int start;
+		// The next free slot
+		int next;
+		// One past the highest slot used by this block or any block inside it
+		int high;
+		// Local variables defined in this block so far
+		final HashMap<String, Integer> names = new HashMap<String, Integer>();
+		
+		Block(int openerIndex, int firstSlot) {
+			opener = openerIndex;
+			start = firstSlot;
+			next = firstSlot;
+			high = firstSlot;
+		}
+		
+		// Defines a local variable in this block, reusing its slot if it was already defined here
+		int declare(String name) {
+			Integer slot = names.get(name);
+			if(slot == null) {
+				slot = next++;
+				names.put(name, slot);
+				high = Math.max(high, next);
+			}
+			return slot;
+		}
+	}
+}
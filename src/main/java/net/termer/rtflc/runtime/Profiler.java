@@ -0,0 +1,257 @@
+package net.termer.rtflc.runtime;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+
+/**
+ * Sampling profiler for Rtfl code.
+ * While a profiler is set on a runtime, every thread executing Rtfl code keeps a shadow stack of the Rtfl functions it is running,
+ * and the profiler's sampling thread records the stacks of all threads at a fixed interval.
+ * Frames are identified by the function's name and the file and line it is executing: the line of the call for functions that called another function,
+ * the line of the last loop that iterated, or else the line the function was defined on.
+ * Samples can be written in the collapsed stack format read by flame graph tools.
+ * @author termer
+ * @since 1.3
+ */
+public class Profiler {
+	private final long _interval;
+	private final ConcurrentHashMap<Thread, ShadowStack> _stacks = new ConcurrentHashMap<Thread, ShadowStack>();
+	private final ThreadLocal<ShadowStack> _stack = ThreadLocal.withInitial(() -> {
+		ShadowStack stack = new ShadowStack();
+		_stacks.put(Thread.currentThread(), stack);
+		return stack;
+	});
+	// Sample counts of every collapsed stack, guarded by itself
+	private final HashMap<String, Long> _samples = new HashMap<String, Long>();
+	private volatile boolean _running = false;
+	private Thread _sampler = null;
+	
+	/**
+	 * Creates a new profiler that samples every millisecond
+	 * @since 1.3
+	 */
+	public Profiler() {
+		this(1000);
+	}
+	/**
+	 * Creates a new profiler
+	 * @param intervalMicros The interval at which stacks are sampled, in microseconds
+	 * @since 1.3
+	 */
+	public Profiler(long intervalMicros) {
+		_interval = Math.max(1, intervalMicros)*1000L;
+	}
+	
+	/**
+	 * Starts sampling
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public synchronized Profiler start() {
+		if(!_running) {
+			_running = true;
+			_sampler = new Thread(() -> {
+				while(_running) {
+					LockSupport.parkNanos(_interval);
+					sample();
+				}
+			}, "RtflProfiler");
+			_sampler.setDaemon(true);
+			_sampler.start();
+		}
+		
+		return this;
+	}
+	/**
+	 * Stops sampling, samples that were already taken are kept
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public synchronized Profiler stop() {
+		if(_running) {
+			_running = false;
+			LockSupport.unpark(_sampler);
+			try {
+				_sampler.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			_sampler = null;
+		}
+		
+		return this;
+	}
+	/**
+	 * Returns whether this profiler is sampling
+	 * @return Whether this profiler is sampling
+	 * @since 1.3
+	 */
+	public boolean running() {
+		return _running;
+	}
+	
+	/**
+	 * Returns the amount of samples taken of every stack, keyed by the stack in collapsed format
+	 * @return The samples
+	 * @since 1.3
+	 */
+	public Map<String, Long> samples() {
+		synchronized(_samples) {
+			return new HashMap<String, Long>(_samples);
+		}
+	}
+	/**
+	 * Deletes all samples taken so far
+	 * @since 1.3
+	 */
+	public void reset() {
+		synchronized(_samples) {
+			_samples.clear();
+		}
+	}
+	/**
+	 * Writes all samples in the collapsed stack format, one stack per line with its frames separated by semicolons, followed by its sample count
+	 * @param out The Writer to write to
+	 * @throws IOException If writing fails
+	 * @since 1.3
+	 */
+	public void writeCollapsed(Writer out) throws IOException {
+		for(Map.Entry<String, Long> sample : samples().entrySet())
+			out.write(sample.getKey()+' '+sample.getValue()+'\n');
+		out.flush();
+	}
+	/**
+	 * Writes all samples to a file in the collapsed stack format
+	 * @param file The file to write to
+	 * @throws IOException If writing fails
+	 * @since 1.3
+	 */
+	public void writeCollapsed(File file) throws IOException {
+		try(FileWriter out = new FileWriter(file)) {
+			writeCollapsed(out);
+		}
+	}
+	
+	/**
+	 * Pushes a frame on the current thread's shadow stack
+	 * @param frame The frame
+	 * @param cause The instruction that entered the frame, its line becomes the line the previous frame is executing
+	 * @since 1.3
+	 */
+	void enter(Frame frame, RtflInstruction cause) {
+		_stack.get().push(frame, cause);
+	}
+	/**
+	 * Pops the top frame off the current thread's shadow stack
+	 * @since 1.3
+	 */
+	void exit() {
+		_stack.get().pop();
+	}
+	/**
+	 * Sets the line the top frame of the current thread's shadow stack is executing
+	 * @param line The line
+	 * @since 1.3
+	 */
+	void line(int line) {
+		_stack.get().line(line);
+	}
+	
+	// Records the stacks of all threads that are executing Rtfl code
+	private void sample() {
+		Iterator<Map.Entry<Thread, ShadowStack>> it = _stacks.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Thread, ShadowStack> entry = it.next();
+			
+			if(!entry.getKey().isAlive()) {
+				it.remove();
+				continue;
+			}
+			
+			String collapsed = entry.getValue().collapse();
+			if(collapsed != null) {
+				synchronized(_samples) {
+					_samples.merge(collapsed, 1L, Long::sum);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A function or file that can appear on a shadow stack
+	 * @author termer
+	 * @since 1.3
+	 */
+	static class Frame {
+		final String name;
+		final String file;
+		final int line;
+		
+		Frame(String frameName, String originFile, int originLine) {
+			name = frameName;
+			file = originFile;
+			line = originLine;
+		}
+	}
+	
+	// Stack of the frames a single thread is executing, read without locking by the sampling thread
+	private static class ShadowStack {
+		private volatile Frame[] _frames = new Frame[16];
+		// The line each frame is executing
+		private volatile int[] _lines = new int[16];
+		private volatile int _depth = 0;
+		
+		void push(Frame frame, RtflInstruction cause) {
+			int depth = _depth;
+			if(depth == _frames.length) {
+				_frames = Arrays.copyOf(_frames, depth*2);
+				_lines = Arrays.copyOf(_lines, depth*2);
+			}
+			if(depth > 0 && cause != null)
+				_lines[depth-1] = cause.originLine();
+			
+			_frames[depth] = frame;
+			_lines[depth] = frame.line;
+			_depth = depth+1;
+		}
+		void pop() {
+			_depth--;
+		}
+		void line(int line) {
+			int depth = _depth;
+			if(depth > 0)
+				_lines[depth-1] = line;
+		}
+		// Returns the stack in collapsed format, or null if it is empty
+		String collapse() {
+			Frame[] frames = _frames;
+			int[] lines = _lines;
+			int depth = Math.min(_depth, Math.min(frames.length, lines.length));
+			if(depth == 0)
+				return null;
+			
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < depth; i++) {
+				Frame frame = frames[i];
+				if(frame == null)
+					return null;
+				
+				if(i > 0)
+					sb.append(';');
+				sb.append(frame.name).append(" (").append(frame.file).append(':').append(lines[i]).append(')');
+			}
+			
+			return sb.toString();
+		}
+	}
+}
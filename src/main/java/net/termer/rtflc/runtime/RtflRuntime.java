@@ -7,11 +7,19 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
 
 import net.termer.rtflc.compiler.RtflCompiler;
+import net.termer.rtflc.consumers.InstructionConsumer;
+import net.termer.rtflc.consumers.OptimizerInstructionConsumer;
 import net.termer.rtflc.instructions.*;
 import net.termer.rtflc.producers.BytecodeInstructionProducer;
 import net.termer.rtflc.producers.ProducerException;
@@ -21,6 +29,7 @@ import net.termer.rtflc.runtime.RuntimeException;
 import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.runtime.StandardFunctions;
 import net.termer.rtflc.type.ArrayType;
+import net.termer.rtflc.type.FutureType;
 import net.termer.rtflc.type.MapType;
 import net.termer.rtflc.type.NullType;
 import net.termer.rtflc.type.NumberType;
@@ -72,26 +81,44 @@ public class RtflRuntime {
 		return new RtflMetadata(new String(filename), compVer, rtflVer, hasLineNums);
 	}
 	
-	private ConcurrentHashMap<String, RtflFunction> _functions = new ConcurrentHashMap<String, RtflFunction>();
-	private ConcurrentHashMap<String, RtflType> _variables = new ConcurrentHashMap<String, RtflType>();
+	private FunctionTable _functions = new FunctionTable();
+	private GlobalTable _variables = new GlobalTable();
 	private ConcurrentHashMap<Integer, LocalVar> _localVars = new ConcurrentHashMap<Integer, LocalVar>();
+	// Absolute paths of the files loaded by the require() function
+	private Set<String> _requiredFiles = ConcurrentHashMap.newKeySet();
 	private GarbageCollector _gc = null;
 	private BufferedReader _terminalIn = null;
 	
-	private int _nextVarId = 0;
+	private AtomicInteger _nextVarId = new AtomicInteger();
+	private int _compileThreshold = 1000;
+	private boolean _optimize = false;
+	private AsyncScheduler _scheduler = AsyncScheduler.threads();
+	private int _parallelism = Runtime.getRuntime().availableProcessors();
+	private int _parallelChunkSize = 1;
+	private ForkJoinPool _parallelPool = null;
+	private volatile Profiler _profiler = null;
+	private volatile RuntimeMetrics _metrics = null;
+	private volatile ExecutionListener _listener = null;
 	
 	private Scope _topScope = new Scope(this, new HashMap<String, Integer>(), null);
 	
 	/**
-	 * Instantiates a new Rtfl runtime
+	 * Instantiates a new Rtfl runtime.
+	 * Local variables are released as soon as the scope that defined them exits, so the garbage collector daemon is not started.
 	 * @since 1.0
 	 */
 	public RtflRuntime() {
+		this(false);
+	}
+	/**
+	 * Instantiates a new Rtfl runtime
+	 * @param startGarbageCollector Whether to start the garbage collector daemon, which periodically deletes local variables that are no longer in use
+	 * @since 1.3
+	 */
+	public RtflRuntime(boolean startGarbageCollector) {
 		// Start garbage collector
-		_gc = new GarbageCollector(20*1000, this);
-		_gc.setDaemon(true);
-		_gc.setName("RtflGC-"+newId());
-		_gc.start();
+		if(startGarbageCollector)
+			garbageCollector().start();
 	}
 	
 	// Terminal input functions
@@ -172,7 +199,20 @@ public class RtflRuntime {
 	 * @since 1.0
 	 */
 	public RtflType execute(RtflInstruction[] instructions, Scope scope) throws RuntimeException {
-		return execute(instructions, scope, false);
+		// Arrays executed again reuse their links
+		return execute(LinkedInstructions.link(instructions), scope);
+	}
+	/**
+	 * Executes Rtfl instructions, stopping them if they exceed the specified budget
+	 * @param instructions The instructions to execute
+	 * @param budget The budget that limits the execution
+	 * @return The value returned by the executed instructions, a NullType if nothing is returned
+	 * @throws BudgetExceededException If the instructions exceed the budget
+	 * @throws RuntimeException If there is an error while executing instructions
+	 * @since 1.3
+	 */
+	public RtflType execute(RtflInstruction[] instructions, ExecutionBudget budget) throws RuntimeException {
+		return execute(instructions, _topScope.descendBudgeted(budget));
 	}
 	/**
 	 * Executes a String of Rtfl code
@@ -199,9 +239,28 @@ public class RtflRuntime {
 	public RtflType execute(String code, Scope scope) throws RuntimeException, IOException, ProducerException {
 		CacheInstructionConsumer cache = new CacheInstructionConsumer();
 		
+		long parseStart = System.nanoTime();
 		SourcecodeInstructionProducer.produce("eval", new ByteArrayInputStream(code.getBytes()), cache);
 		
-		return execute(cache.cache.toArray(new RtflInstruction[0]), scope, true);
+		RuntimeMetrics metrics = _metrics;
+		if(metrics != null)
+			metrics.parsed(System.nanoTime()-parseStart);
+		
+		return execute(cache.cache.toArray(new RtflInstruction[0]), scope);
+	}
+	/**
+	 * Executes a String of Rtfl code, stopping it if it exceeds the specified budget
+	 * @param code The Rtfl code to execute
+	 * @param budget The budget that limits the execution
+	 * @return The value returned by the executed instructions, a NullType if nothing is returned
+	 * @throws BudgetExceededException If the code exceeds the budget
+	 * @throws RuntimeException If there is an error while executing instructions
+	 * @throws IOException If reading the code String fails
+	 * @throws ProducerException If parsing/reading the instructions fails
+	 * @since 1.3
+	 */
+	public RtflType execute(String code, ExecutionBudget budget) throws RuntimeException, IOException, ProducerException {
+		return execute(code, _topScope.descendBudgeted(budget));
 	}
 	/**
 	 * Executes Rtfl instructions asynchronously
@@ -211,24 +270,101 @@ public class RtflRuntime {
 	 * @since 1.0
 	 */
 	public RtflRuntime executeAsync(RtflInstruction[] instructions, Scope scope) {
-		Thread asyncThread = new Thread(() -> {
-				try {
-					execute(instructions, scope, true);
-				} catch (RuntimeException e) {
+		submitAsync(instructions, scope);
+		return this;
+	}
+	/**
+	 * Executes Rtfl instructions asynchronously and returns a handle to their result
+	 * @param instructions The instructions to execute
+	 * @param scope The scope in which to run the instructions
+	 * @return The handle to the value returned by the instructions
+	 * @since 1.3
+	 */
+	public FutureType submitAsync(RtflInstruction[] instructions, Scope scope) {
+		LinkedInstructions linked = LinkedInstructions.link(instructions);
+		
+		return executeAsync(linked, 0, linked.length(), scope.descendFrame(linked.frameSize(), null));
+	}
+	/**
+	 * Executes a range of linked Rtfl instructions asynchronously
+	 * @param linked The linked instructions to execute
+	 * @param start The index of the first instruction to execute
+	 * @param end The index after the last instruction to execute
+	 * @param scope The scope in which to run the instructions
+	 * @return The handle to the value returned by the instructions
+	 * @since 1.3
+	 */
+	FutureType executeAsync(LinkedInstructions linked, int start, int end, Scope scope) {
+		// Values visible to the async block become reachable from its thread
+		scope.share();
+		
+		// Hold on to all visible local variables until the async block finishes
+		Integer[] held = scope.variableAliases().values().toArray(new Integer[0]);
+		for(int localId : held) {
+			LocalVar var = _localVars.get(localId);
+			if(var != null)
+				var.retain();
+		}
+		
+		CompletableFuture<RtflType> future = new CompletableFuture<RtflType>();
+		RuntimeMetrics metrics = _metrics;
+		Runnable task = () -> {
+			ExecutionBudget budget = scope.budget();
+			Profiler profiler = _profiler;
+			if(profiler != null)
+				profiler.enter(profileFrame("<async>", linked, start), null);
+			
+			try {
+				// Blocks that were cancelled before they started do not run at all
+				if(budget != null)
+					budget.check();
+				
+				RtflType res = execute(linked, start, end, scope);
+				if(res == null)
+					res = NullType.INSTANCE;
+				
+				// The result is handed to whichever thread awaits it
+				RtflType.share(res);
+				future.complete(res);
+			} catch (RuntimeException e) {
+				// Cancellation is not an error
+				if(budget == null || !budget.cancelled()) {
 					String where = e.cause() == null ? "unknown:0" : e.cause().originFile()+':'+e.cause().originLine();
 					System.err.println("(async) "+where+' '+e.getMessage());
 				}
-		});
-		asyncThread.setName("RtflWorker-"+this.newId());
-		
-		// Add ownership of local variables
-		for(int localId : scope.variableAliases().values())
-			_localVars.get(localId).addOwner(asyncThread.getName());
+				future.completeExceptionally(e);
+			} finally {
+				scope.release();
+				for(int localId : held)
+					releaseLocal(localId);
+				
+				// Make sure nothing waits forever if the block failed with an unexpected error
+				if(!future.isDone())
+					future.completeExceptionally(new RuntimeException("Async execution failed unexpectedly"));
+				
+				if(profiler != null)
+					profiler.exit();
+				if(metrics != null)
+					metrics.asyncFinished(future.isCompletedExceptionally());
+			}
+		};
 		
-		// Begin execution
-		asyncThread.start();
+		// Begin execution, counted as started first so the block cannot finish before it started
+		if(metrics != null)
+			metrics.asyncStarted();
+		try {
+			_scheduler.schedule(task);
+		} catch(RejectedExecutionException e) {
+			if(metrics != null)
+				metrics.asyncFinished(true);
+			scope.release();
+			for(int localId : held)
+				releaseLocal(localId);
+			future.completeExceptionally(e);
+			throw e;
+		}
 		
-		return this;
+		return new FutureType(future);
 	}
 	
 	/**
@@ -254,8 +390,36 @@ public class RtflRuntime {
 	 * @since 1.0
 	 */
 	public RtflType executeFile(File file, Scope scope) throws IOException, RuntimeException, ProducerException {
+		return execute(readFile(file, scope), scope);
+	}
+	/**
+	 * Executes an Rtfl file (script or bytecode), stopping it if it exceeds the specified budget
+	 * @param file The file to execute
+	 * @param budget The budget that limits the execution
+	 * @return The RtflType value returned by the file, a NullType if nothing
+	 * @throws IOException If reading the file fails
+	 * @throws BudgetExceededException If the file exceeds the budget
+	 * @throws RuntimeException If executing the file fails
+	 * @throws ProducerException If parsing/reading the file fails
+	 * @since 1.3
+	 */
+	public RtflType executeFile(File file, ExecutionBudget budget) throws IOException, RuntimeException, ProducerException {
+		Scope scope = _topScope.descendBudgeted(budget);
+		return execute(readFile(file, scope), scope);
+	}
+	/**
+	 * Reads the instructions of an Rtfl file (script or bytecode)
+	 * @param file The file to read
+	 * @param scope The scope the file will be executed in
+	 * @return The file's instructions
+	 * @throws IOException If reading the file fails
+	 * @throws RuntimeException If the file does not exist or was compiled for a newer version of Rtfl
+	 * @throws ProducerException If parsing/reading the file fails
+	 * @since 1.3
+	 */
+	RtflInstruction[] readFile(File file, Scope scope) throws IOException, RuntimeException, ProducerException {
 		CacheInstructionConsumer cache = new CacheInstructionConsumer();
-		RtflType result = null;
+		InstructionConsumer cons = _optimize ? new OptimizerInstructionConsumer(cache, scope) : cache;
 		
 		if(file.exists()) {
 			if(file.isFile()) {
@@ -270,17 +434,24 @@ public class RtflRuntime {
 						throw new RuntimeException("Binary was compiled for a newer version of Rtfl (compiled for "+meta.rtflVersion+", running "+RtflCompiler.RTFL_VERSION+')');
 					
 					// Read bytecode
-					BytecodeInstructionProducer.produce(meta.fileName, fin, cache, meta.hasLineNumbers);
+					long loadStart = System.nanoTime();
+					BytecodeInstructionProducer.produce(meta.fileName, fin, cons, meta.hasLineNumbers);
+					
+					RuntimeMetrics metrics = _metrics;
+					if(metrics != null)
+						metrics.loaded(System.nanoTime()-loadStart);
 				} else {
 					fin.close();
 					fin = new FileInputStream(file);
 					
 					// Parse script
-					SourcecodeInstructionProducer.produce(file.getName(), fin, cache);
+					long parseStart = System.nanoTime();
+					SourcecodeInstructionProducer.produce(file.getName(), fin, cons);
+					
+					RuntimeMetrics metrics = _metrics;
+					if(metrics != null)
+						metrics.parsed(System.nanoTime()-parseStart);
 				}
-				
-				// Execute instructions
-				result = execute(cache.cache.toArray(new RtflInstruction[0]), scope);
 			} else {
 				throw new RuntimeException("Provided path is not a file");
 			}
@@ -288,85 +459,160 @@ public class RtflRuntime {
 			throw new RuntimeException("Provided file does not exist");
 		}
 		
-		return result;
+		return cache.cache.toArray(new RtflInstruction[0]);
 	}
 	
 	/**
 	 * Executes Rtfl instructions
 	 * @param instructions The instructions to execute
 	 * @param scope The scope in which to run the instructions
-	 * @param disownAll Whether to delete all local variables after execution (should only be used on top-level execution)
+	 * @param disownAll Unused, local variables created by the execution are always released when it finishes
 	 * @return The value returned by the executed instructions, a NullType if nothing is returned
 	 * @throws RuntimeException If there is an error while executing instructions
 	 * @since 1.0
+	 * @deprecated disownAll is ignored, use execute(RtflInstruction[], Scope) instead
 	 */
-	@SuppressWarnings("unchecked")
+	@Deprecated
 	public RtflType execute(RtflInstruction[] instructions, Scope scope, boolean disownAll) throws RuntimeException {
-		RtflType val = new NullType();
-		ArrayList<Integer> localIds = new ArrayList<Integer>();
+		return execute(instructions, scope);
+	}
+	/**
+	 * Executes linked Rtfl instructions in a new frame
+	 * @param instructions The linked instructions to execute
+	 * @param scope The scope in which to run the instructions
+	 * @return The value returned by the executed instructions, a NullType if nothing is returned
+	 * @throws RuntimeException If there is an error while executing instructions
+	 * @since 1.3
+	 */
+	public RtflType execute(LinkedInstructions instructions, Scope scope) throws RuntimeException {
+		// The listener is read once here and passed down through scopes, so executions without one never read it again
+		ExecutionListener listener = _listener;
+		Scope frameScope = scope.descendFrame(instructions.frameSize(), null, listener);
 		
-		for(int i = 0; i < instructions.length; i++) {
+		Profiler profiler = _profiler;
+		if(profiler != null)
+			profiler.enter(profileFrame("<file>", instructions, 0), null);
+		if(listener != null)
+			listener.scopeDescend(frameScope);
+		
+		try {
+			RtflType res = execute(instructions, 0, instructions.length(), frameScope);
+			return res == null ? NullType.INSTANCE : res;
+		} finally {
+			if(listener != null)
+				listener.scopeAscend(frameScope);
+			frameScope.release();
+			
+			if(profiler != null)
+				profiler.exit();
+		}
+	}
+	
+	/**
+	 * Executes a range of linked Rtfl instructions in the frame of the provided scope.
+	 * A `return` stops execution of the range immediately, including when it is inside an `if`, `while` or `try` body.
+	 * @param linked The linked instructions to execute
+	 * @param start The index of the first instruction to execute
+	 * @param end The index after the last instruction to execute
+	 * @param scope The scope in which to run the instructions
+	 * @return The value returned by the executed instructions, or null if they finished without returning
+	 * @throws RuntimeException If there is an error while executing instructions
+	 * @since 1.3
+	 */
+	@SuppressWarnings("unchecked")
+	RtflType execute(LinkedInstructions linked, int start, int end, Scope scope) throws RuntimeException {
+		RtflInstruction[] instructions = linked.instructions();
+		RuntimeMetrics metrics = _metrics;
+		ExecutionListener listener = scope.listener();
+		// Scopes descended into by DESCEND_SCOPE instructions that have not been ascended yet
+		int descended = 0;
+		
+		for(int i = start; i < end; i++) {
 			RtflInstruction inst = instructions[i];
+			// Set when a return is executed
+			RtflType ret = null;
+			
+			if(metrics != null)
+				metrics.instruction(linked.opcode(i));
+			if(listener != null)
+				listener.instructionEnter(inst, scope);
 			
 			try {
-				// Check instructions
-				if(inst instanceof VarDefInstruction) {
+				// Dispatch on the instruction's opcode
+				switch(linked.opcode(i)) {
+				case Opcodes.VAR_DEF: {
 					VarDefInstruction ins = (VarDefInstruction) inst;
-					_variables.put(ins.variableName(), resolveValue(ins.variableValue(), scope));
-				} else if(inst instanceof VarLocalDefInstruction) {
+					_variables.put(ins.variableName(), resolveValue(linked.values(i)[0], scope));
+					break;
+				}
+				case Opcodes.VAR_LOCAL_DEF: {
 					VarLocalDefInstruction ins = (VarLocalDefInstruction) inst;
 					
-					int varId = scope.createLocalVar(ins.variableName(), resolveValue(ins.variableValue(), scope));
-					localIds.add(varId);
-				} else if(inst instanceof VarAssignInstruction) {
-					VarAssignInstruction ins = (VarAssignInstruction) inst;
-					
-					scope.assignVar(ins.variableName(), resolveValue(ins.assignValue(), scope));
-				} else if(inst instanceof ArrayAssignInstruction) {
-					ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
-					
-					RtflType array = resolveValue(ins.array(), scope);
-					RtflType index = resolveValue(ins.index(), scope);
-					RtflType value = resolveValue(ins.assignValue(), scope);
-					
-					if(!(array instanceof ArrayType))
-						throw new RuntimeException("Cannot get element from non-array", inst);
-					if(!(index instanceof NumberType))
-						throw new RuntimeException("Provided non-number index");
+					RtflType value = resolveValue(linked.values(i)[0], scope);
+					int slot = linked.slot(i);
 					
-					((ArrayList<RtflType>) array.value()).set(((NumberType) index).toInt(), value);
-				} else if(inst instanceof MapAssignInstruction) {
-					MapAssignInstruction ins = (MapAssignInstruction) inst;
-					
-					RtflType map = resolveValue(ins.map(), scope);
-					String field = ins.field();
-					RtflType value = resolveValue(ins.assignValue(), scope);
+					if(slot > -1)
+						scope.frame()[slot] = new LocalVar(ins.variableName(), value);
+					else
+						scope.createLocalVar(ins.variableName(), value);
+					break;
+				}
+				case Opcodes.VAR_ASSIGN: {
+					VarAssignInstruction ins = (VarAssignInstruction) inst;
 					
-					if(!(map instanceof MapType))
-						throw new RuntimeException("Cannot get field from non-map", inst);
+					RtflType value = resolveValue(linked.values(i)[0], scope);
+					int slot = linked.slot(i);
 					
-					((ConcurrentHashMap<String, RtflType>) map.value()).put(field, value);
-				} else if(inst instanceof VarUndefInstruction) {
+					// Fall back to looking up the variable by name if its slot is empty
+					if(slot > -1 && scope.frame()[slot] != null)
+						scope.frame()[slot].assign(value);
+					else
+						scope.assignVar(ins.variableName(), value);
+					break;
+				}
+				case Opcodes.VAR_UNDEF: {
 					VarUndefInstruction ins = (VarUndefInstruction) inst;
 					
-					int undefId = scope.undefineVar(ins.variableName());
-					if(undefId > -1)
-						localIds.remove(new Integer(undefId));
-				} else if(inst instanceof FuncCallInstruction) {
+					int slot = linked.slot(i);
+					
+					if(slot > -1 && scope.frame()[slot] != null)
+						scope.frame()[slot] = null;
+					else
+						scope.undefineVar(ins.variableName());
+					break;
+				}
+				case Opcodes.FUNC_CALL: {
 					FuncCallInstruction ins = (FuncCallInstruction) inst;
-					scope.function(ins.functionName()).run(
-						resolveValues(ins.functionArguments(), scope),
-						this,
-						scope.descend(ins)
-					);
-				} else if(inst instanceof ReturnInstruction) {
-					ReturnInstruction ins = (ReturnInstruction) inst;
-					val = resolveValue(ins.returnValue(), scope);
-				} else if(inst instanceof IfInstruction) {
-					IfInstruction ins = (IfInstruction) inst;
+					Scope callScope = scope.descend(ins);
+					try {
+						if(listener == null) {
+							linked.callSite(i).function(scope).run(
+								resolveValues(linked.values(i), scope),
+								this,
+								callScope
+							);
+						} else {
+							RtflFunction func = linked.callSite(i).function(scope);
+							RtflType[] args = resolveValues(linked.values(i), scope);
+							
+							listener.functionCall(ins.functionName(), func, args, callScope);
+							RtflType res = func.run(args, this, callScope);
+							listener.functionReturn(ins.functionName(), func, res, callScope);
+						}
+					} finally {
+						callScope.release();
+					}
+					break;
+				}
+				case Opcodes.RETURN: {
+					ret = resolveValue(linked.values(i)[0], scope);
+					break;
+				}
+				case Opcodes.IF: {
+					int clauseEnd = linked.clauseEnd(i);
 					
 					// Check condition
-					RtflType cond = resolveValue(ins.condition(), scope);
+					RtflType cond = resolveValue(linked.values(i)[0], scope);
 					boolean exec = false;
 					if(cond instanceof NumberType) {
 						exec = ((NumberType) cond).toDouble() > 0;
@@ -374,189 +620,398 @@ public class RtflRuntime {
 						throw new RuntimeException("Non-number/bool value provided for 'if' instruction", inst);
 					}
 					
-					// Cache `if` body instructions if condition is true
-					int level = 1;
-					ArrayList<RtflInstruction> instCache = new ArrayList<RtflInstruction>();
-					// Loop through instructions
-					for(int j = i+1; j < instructions.length && level > 0; j++) {
-						RtflInstruction _inst = instructions[j];
-						if(_inst instanceof ClauseOpenerInstruction) {
-							level++;
-							if(exec)
-								instCache.add(_inst);
-						} else if(_inst instanceof EndClauseInstruction) {
-							level--;
-							if(level > 0 && exec)
-								instCache.add(_inst);
-							else
-								i = j;
-						} else if(exec) {
-							instCache.add(_inst);
+					// Execute body if condition is true
+					if(exec) {
+						Scope body = scope.descend(inst);
+						if(listener != null)
+							listener.scopeDescend(body);
+						try {
+							ret = execute(linked, i+1, clauseEnd, body);
+						} finally {
+							if(listener != null)
+								listener.scopeAscend(body);
+							body.release();
+							linked.releaseBlock(scope.frame(), i);
 						}
 					}
 					
-					// Execute instructions if condition is true
-					if(exec)
-						execute(instCache.toArray(new RtflInstruction[0]), scope.descend(inst));
-				} else if(inst instanceof WhileInstruction) {
-					WhileInstruction ins = (WhileInstruction) inst;
-					
-					// Cache `while` body instructions
-					int level = 1;
-					ArrayList<RtflInstruction> instCache = new ArrayList<RtflInstruction>();
-					// Loop through instructions
-					for(int j = i+1; j < instructions.length && level > 0; j++) {
-						RtflInstruction _inst = instructions[j];
-						if(_inst instanceof ClauseOpenerInstruction) {
-							level++;
-							instCache.add(_inst);
-						} else if(_inst instanceof EndClauseInstruction) {
-							level--;
-							if(level > 0)
-								instCache.add(_inst);
-							else
-								i = j;
-						} else {
-							instCache.add(_inst);
-						}
-					}
+					i = clauseEnd;
+					break;
+				}
+				case Opcodes.WHILE: {
+					int clauseEnd = linked.clauseEnd(i);
 					
-					// Loop instructions
-					while(true) {
-						RtflType cond = resolveValue(ins.condition(), scope);
+					// Loop body, until the condition is false or the body returns
+					while(ret == null) {
+						RtflType cond = resolveValue(linked.values(i)[0], scope);
 						// Check condition
 						if(cond instanceof NumberType) {
-							if(((NumberType) cond).toDouble() > 0)
-								execute(instCache.toArray(new RtflInstruction[0]), scope.descend(inst));
-							else
+							if(((NumberType) cond).toDouble() > 0) {
+								Scope body = scope.descend(inst);
+								if(listener != null)
+									listener.scopeDescend(body);
+								try {
+									ret = execute(linked, i+1, clauseEnd, body);
+								} finally {
+									if(listener != null)
+										listener.scopeAscend(body);
+									// Locals defined in the body do not survive to the next iteration
+									body.release();
+									linked.releaseBlock(scope.frame(), i);
+								}
+								linked.backEdge(i);
+								
+								Profiler profiler = _profiler;
+								if(profiler != null)
+									profiler.line(inst.originLine());
+								
+								ExecutionBudget budget = scope.budget();
+								if(budget != null)
+									budget.charge(clauseEnd-i);
+							} else {
 								break;
+							}
 						} else {
 							throw new RuntimeException("Non-number/bool value provided for 'while' instruction", inst);
 						}
 					}
-				} else if(inst instanceof TryInstruction) {
-					TryInstruction ins = (TryInstruction) inst;
 					
-					// Cache `error`/`try` body instructions
-					int level = 1;
-					ArrayList<RtflInstruction> instCache = new ArrayList<RtflInstruction>();
-					// Loop through instructions
-					for(int j = i+1; j < instructions.length && level > 0; j++) {
-						RtflInstruction _inst = instructions[j];
-						if(_inst instanceof ClauseOpenerInstruction) {
-							level++;
-							instCache.add(_inst);
-						} else if(_inst instanceof EndClauseInstruction) {
-							level--;
-							if(level > 0)
-								instCache.add(_inst);
-							else
-								i = j;
-						} else {
-							instCache.add(_inst);
-						}
-					}
+					i = clauseEnd;
+					break;
+				}
+				case Opcodes.TRY: {
+					TryInstruction ins = (TryInstruction) inst;
+					int clauseEnd = linked.clauseEnd(i);
 					
-					scope.createLocalVar(ins.variableName(), new StringType("ok"));
+					LocalVar var = new LocalVar(ins.variableName(), new StringType("ok"));
+					scope.frame()[linked.slot(i)] = var;
+					Scope body = scope.descend(inst);
+					if(listener != null)
+						listener.scopeDescend(body);
 					try {
-						execute(instCache.toArray(new RtflInstruction[0]), scope.descend(inst));
+						ret = execute(linked, i+1, clauseEnd, body);
+					} catch(BudgetExceededException e) {
+						// Scripts may not recover from exceeding their budget
+						throw e;
 					} catch(RuntimeException e) {
-						scope.assignVar(ins.variableName(), new StringType(e.getMessage()));
+						var.value = new StringType(e.getMessage());
+						if(listener != null)
+							listener.errorCaught(ins, e, scope);
+					} finally {
+						if(listener != null)
+							listener.scopeAscend(body);
+						body.release();
+						linked.releaseBlock(scope.frame(), i);
 					}
-				} else if(inst instanceof EndClauseInstruction) {
+					
+					i = clauseEnd;
+					break;
+				}
+				case Opcodes.END_CLAUSE:
 					// No action is needed
-				} else if(inst instanceof FuncDefInstruction) {
+					break;
+				case Opcodes.FUNC_DEF: {
 					FuncDefInstruction ins = (FuncDefInstruction) inst;
+					int clauseEnd = linked.clauseEnd(i);
 					
-					// Fetch function body instructions
-					int level = 1;
-					ArrayList<RtflInstruction> instCache = new ArrayList<RtflInstruction>();
-					// Loop through instructions
-					for(int j = i+1; j < instructions.length && level > 0; j++) {
-						RtflInstruction _inst = instructions[j];
-						if(_inst instanceof ClauseOpenerInstruction) {
-							level++;
-							instCache.add(_inst);
-						} else if(_inst instanceof EndClauseInstruction) {
-							level--;
-							if(level > 0)
-								instCache.add(_inst);
-							else
-								i = j;
-						} else {
-							instCache.add(_inst);
-						}
-					}
+					// Create function from its linked body
+					_functions.put(ins.functionName(), new InstructionFunction(linked, i+1, clauseEnd, ins.argumentNames()));
 					
-					// Create function
-					_functions.put(ins.functionName(), new InstructionFunction(instCache.toArray(new RtflInstruction[0]), ins.argumentNames()));
-				} else if(inst instanceof FuncUndefInstruction) {
+					i = clauseEnd;
+					break;
+				}
+				case Opcodes.FUNC_UNDEF: {
 					FuncUndefInstruction ins = (FuncUndefInstruction) inst;
 					
 					// Remove function by name
 					_functions.remove(ins.functionName());
-				} else if(inst instanceof AsyncInstruction) {
-					// Fetch clause body instructions
-					int level = 1;
-					ArrayList<RtflInstruction> instCache = new ArrayList<RtflInstruction>();
-					// Loop through instructions
-					for(int j = i+1; j < instructions.length && level > 0; j++) {
-						RtflInstruction _inst = instructions[j];
-						if(_inst instanceof ClauseOpenerInstruction) {
-							level++;
-							instCache.add(_inst);
-						} else if(_inst instanceof EndClauseInstruction) {
-							level--;
-							if(level > 0)
-								instCache.add(_inst);
-							else
-								i = j;
-						} else {
-							instCache.add(_inst);
-						}
-					}
+					break;
+				}
+				case Opcodes.ASYNC:
+				case Opcodes.ASYNC_HANDLE: {
+					int clauseEnd = linked.clauseEnd(i);
+					
+					// Execute body asynchronously, with its own copy of the surrounding frames
+					FutureType handle = executeAsync(linked, i+1, clauseEnd, scope.snapshot().descend(inst));
 					
-					// Execute instructions asynchronously
-					executeAsync(instCache.toArray(new RtflInstruction[0]), scope.descend(inst));
-				} else if(inst instanceof DescendScopeInstruction) {
+					// Store the handle to the body's result if a variable was named
+					if(linked.opcode(i) == Opcodes.ASYNC_HANDLE)
+						scope.frame()[linked.slot(i)] = new LocalVar(((AsyncInstruction) inst).variableName(), handle);
+					
+					i = clauseEnd;
+					break;
+				}
+				case Opcodes.DESCEND_SCOPE:
 					// Descend the current operating scope
 					scope = scope.descend(inst);
-				} else if(inst instanceof AscendScopeInstruction) {
+					descended++;
+					if(listener != null)
+						listener.scopeDescend(scope);
+					break;
+				case Opcodes.ASCEND_SCOPE:
 					// Ascend the current operating scope
+					if(listener != null)
+						listener.scopeAscend(scope);
+					scope.release();
+					linked.releaseBlock(scope.frame(), i);
 					scope = scope.parent();
+					descended--;
+					break;
+				case Opcodes.ARRAY_ASSIGN: {
+					ArrayAssignInstruction ins = (ArrayAssignInstruction) inst;
+					
+					RtflType[] values = linked.values(i);
+					RtflType array = resolveValue(values[0], scope);
+					RtflType index = resolveValue(values[1], scope);
+					RtflType value = resolveValue(values[2], scope);
+					
+					if(!(array instanceof ArrayType))
+						throw new RuntimeException("Cannot get element from non-array", inst);
+					if(!(index instanceof NumberType))
+						throw new RuntimeException("Provided non-number index");
+					
+					((ArrayType) array).set(((NumberType) index).toInt(), value);
+					break;
 				}
-			} catch(RuntimeException e) {
-				// Remove ownership of variables to avoid leaks
-				if(disownAll) {
-					for(int localId : scope.variableAliases().values())
-						if(_localVars.containsKey(localId))
-							_localVars.get(localId).removeOwner(Thread.currentThread().getName());
-				} else {
-					for(int localId : localIds)
-						if(_localVars.containsKey(localId))
-							_localVars.get(localId).removeOwner(Thread.currentThread().getName());
+				case Opcodes.MAP_ASSIGN: {
+					MapAssignInstruction ins = (MapAssignInstruction) inst;
+					
+					RtflType[] values = linked.values(i);
+					RtflType map = resolveValue(values[0], scope);
+					String field = ins.field();
+					RtflType value = resolveValue(values[1], scope);
+					
+					if(!(map instanceof MapType))
+						throw new RuntimeException("Cannot get field from non-map", inst);
+					
+					((MapType) map).put(field, value);
+					break;
 				}
-				
+				}
+			} catch(RuntimeException e) {
 				// Add cause to exception if not present and throw again
 				if(e.cause() == null)
-					throw new RuntimeException(e.getMessage(), inst);
+					throw e instanceof BudgetExceededException ? new BudgetExceededException(e.getMessage(), inst) : new RuntimeException(e.getMessage(), inst);
 				else
 					throw e;
 			}
+			
+			if(listener != null)
+				listener.instructionExit(inst, scope);
+			
+			if(ret != null) {
+				// Scopes are descended into by files packaged into compiled scripts, a return inside of one only ends that file
+				if(descended > 0)
+					i = scopeEnd(linked, i+1, end)-1;
+				else
+					return ret;
+			}
 		}
 		
-		// Remove ownership of vars created in this execution
-		if(disownAll) {
-			for(int localId : scope.variableAliases().values())
-				if(_localVars.containsKey(localId))
-					_localVars.get(localId).removeOwner(Thread.currentThread().getName());
-		} else {
-			for(int localId : localIds)
-				if(_localVars.containsKey(localId))
-					_localVars.get(localId).removeOwner(Thread.currentThread().getName());
+		return null;
+	}
+	// Returns a profiler frame for top level code or an async block, named after the file of its first instruction
+	private static Profiler.Frame profileFrame(String name, LinkedInstructions linked, int start) {
+		if(start >= linked.length())
+			return new Profiler.Frame(name, "unknown", 0);
+		
+		RtflInstruction first = linked.instructions()[start];
+		return new Profiler.Frame(name, first.originFile(), first.originLine());
+	}
+	// Returns the index of the ASCEND_SCOPE instruction that ascends the innermost scope descended into before the specified index
+	private static int scopeEnd(LinkedInstructions linked, int index, int end) {
+		int depth = 0;
+		for(int i = index; i < end; i++) {
+			int op = linked.opcode(i);
+			if(op == Opcodes.DESCEND_SCOPE)
+				depth++;
+			else if(op == Opcodes.ASCEND_SCOPE && depth-- == 0)
+				return i;
 		}
 		
-		return val;
+		return end;
+	}
+	
+	/**
+	 * Sets how many invocations and loop iterations a function must run before it is compiled.
+	 * Compiled functions execute without going through the interpreter, and fall back to it if a function they call is redefined.
+	 * @param threshold The threshold, or 0 to never compile functions
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime compileThreshold(int threshold) {
+		_compileThreshold = threshold;
+		return this;
+	}
+	/**
+	 * Returns how many invocations and loop iterations a function must run before it is compiled
+	 * @return The threshold, 0 if functions are never compiled
+	 * @since 1.3
+	 */
+	public int compileThreshold() {
+		return _compileThreshold;
+	}
+	/**
+	 * Sets the scheduler that runs async blocks.
+	 * By default, every async block runs on a new thread.
+	 * @param scheduler The scheduler
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime asyncScheduler(AsyncScheduler scheduler) {
+		_scheduler = scheduler;
+		return this;
+	}
+	/**
+	 * Returns the scheduler that runs async blocks
+	 * @return The scheduler
+	 * @since 1.3
+	 */
+	public AsyncScheduler asyncScheduler() {
+		return _scheduler;
+	}
+	/**
+	 * Sets the amount of threads the parallel_map, parallel_for and parallel_reduce functions split their work across.
+	 * Defaults to the amount of available processors.
+	 * @param parallelism The amount of threads
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public synchronized RtflRuntime parallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		
+		_parallelism = parallelism;
+		
+		// The pool is created again with the new parallelism when it is needed
+		if(_parallelPool != null) {
+			_parallelPool.shutdown();
+			_parallelPool = null;
+		}
+		return this;
+	}
+	/**
+	 * Returns the amount of threads the parallel_map, parallel_for and parallel_reduce functions split their work across
+	 * @return The amount of threads
+	 * @since 1.3
+	 */
+	public int parallelism() {
+		return _parallelism;
+	}
+	/**
+	 * Sets the minimum amount of elements the parallel_map, parallel_for and parallel_reduce functions process in one piece.
+	 * Work is split into about four pieces per thread, but never into pieces smaller than this.
+	 * @param size The minimum amount of elements per piece
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime parallelChunkSize(int size) {
+		_parallelChunkSize = Math.max(1, size);
+		return this;
+	}
+	/**
+	 * Returns the minimum amount of elements the parallel_map, parallel_for and parallel_reduce functions process in one piece
+	 * @return The minimum amount of elements per piece
+	 * @since 1.3
+	 */
+	public int parallelChunkSize() {
+		return _parallelChunkSize;
+	}
+	// Returns the pool that runs parallel work, creating it if necessary
+	synchronized ForkJoinPool parallelPool() {
+		if(_parallelPool == null)
+			_parallelPool = new ForkJoinPool(_parallelism);
+		return _parallelPool;
+	}
+	/**
+	 * Sets the profiler that samples the Rtfl functions this runtime executes.
+	 * Profilers have to be started to take samples, and may be shared by multiple runtimes.
+	 * @param profiler The profiler, or null to stop profiling
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime profiler(Profiler profiler) {
+		_profiler = profiler;
+		return this;
+	}
+	/**
+	 * Returns the profiler that samples the Rtfl functions this runtime executes
+	 * @return The profiler, or null if this runtime is not being profiled
+	 * @since 1.3
+	 */
+	public Profiler profiler() {
+		return _profiler;
+	}
+	/**
+	 * Sets the listener that receives events while this runtime executes Rtfl code.
+	 * Executions pick up the listener when they start, so code that is already running keeps notifying the listener it started with.
+	 * @param listener The listener, or null to stop reporting events
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime listener(ExecutionListener listener) {
+		_listener = listener;
+		return this;
+	}
+	/**
+	 * Returns the listener that receives events while this runtime executes Rtfl code
+	 * @return The listener, or null if none is set
+	 * @since 1.3
+	 */
+	public ExecutionListener listener() {
+		return _listener;
+	}
+	/**
+	 * Starts counting what this runtime does, the counters can be read from metrics()
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public synchronized RtflRuntime enableMetrics() {
+		if(_metrics == null)
+			_metrics = new RuntimeMetrics(this);
+		return this;
+	}
+	/**
+	 * Stops counting what this runtime does, unregistering its metrics from JMX if they were registered
+	 * @return this, to be used fluently
+	 * @throws JMException If unregistering the metrics fails
+	 * @since 1.3
+	 */
+	public synchronized RtflRuntime disableMetrics() throws JMException {
+		if(_metrics != null) {
+			_metrics.unregister();
+			_metrics = null;
+		}
+		return this;
+	}
+	/**
+	 * Returns the counters of what this runtime does
+	 * @return The metrics, or null if metrics are not enabled
+	 * @since 1.3
+	 */
+	public RuntimeMetrics metrics() {
+		return _metrics;
+	}
+	/**
+	 * Sets whether files should be optimized when they are loaded.
+	 * Optimizing folds literal logic expressions and calls to pure standard functions, and removes `if` and `while` blocks that can never run.
+	 * Calls are not folded in files executed in scopes that restrict functions.
+	 * Disabled by default.
+	 * @param optimize Whether to optimize files
+	 * @return this, to be used fluently
+	 * @since 1.3
+	 */
+	public RtflRuntime optimize(boolean optimize) {
+		_optimize = optimize;
+		return this;
+	}
+	/**
+	 * Returns whether files are optimized when they are loaded
+	 * @return Whether files are optimized
+	 * @since 1.3
+	 */
+	public boolean optimize() {
+		return _optimize;
 	}
 	
 	/**
@@ -564,11 +1019,12 @@ public class RtflRuntime {
 	 * @return All functions
 	 * @since 1.0
 	 */
-	public ConcurrentHashMap<String, RtflFunction> functions() {
+	public FunctionTable functions() {
 		return _functions;
 	}
 	/**
-	 * Returns all global variables
+	 * Returns all global variables.
+	 * Values stored in the map are shared, since global variables are reachable from every thread.
 	 * @return All global variables
 	 * @since 1.0
 	 */
@@ -588,9 +1044,43 @@ public class RtflRuntime {
 	 * @return The garbage collector daemon
 	 * @since 1.0
 	 */
-	public GarbageCollector garbageCollector() {
+	public synchronized GarbageCollector garbageCollector() {
+		// Only created when it is needed, most runtimes never start it
+		if(_gc == null) {
+			_gc = new GarbageCollector(20*1000, this);
+			_gc.setDaemon(true);
+			_gc.setName("RtflGC-"+newId());
+		}
+		
 		return _gc;
 	}
+	/**
+	 * Returns the absolute paths of the files loaded by the require() function
+	 * @return The paths of the required files
+	 * @since 1.3
+	 */
+	Set<String> requiredFiles() {
+		return _requiredFiles;
+	}
+	
+	/**
+	 * Takes a snapshot of this runtime's functions, global variables, required files and settings.
+	 * New runtimes forked from the snapshot start out in the same state without having to import functions or require files again.
+	 * @return The snapshot
+	 * @since 1.3
+	 */
+	public RtflRuntimeSnapshot snapshot() {
+		return new RtflRuntimeSnapshot(this);
+	}
+	/**
+	 * Deletes all local variables and files marked as required, and starts a new top level scope
+	 * @since 1.3
+	 */
+	void reset() {
+		_localVars.clear();
+		_requiredFiles.clear();
+		_topScope = new Scope(this, new HashMap<String, Integer>(), null);
+	}
 	
 	/**
 	 * Imports all Rtfl standard functions into this Runtime
@@ -598,7 +1088,7 @@ public class RtflRuntime {
 	 * @since 1.0
 	 */
 	public RtflRuntime importStandard() {
-		_functions.putAll(new StandardFunctions().functions());
+		_functions.putAll(StandardFunctions.shared());
 		return this;
 	}
 	/**
@@ -675,13 +1165,25 @@ public class RtflRuntime {
 		return this;
 	}
 	
+	/**
+	 * Releases a hold on the local variable with the specified ID, deleting it if it is no longer in use
+	 * @param id The ID of the local variable
+	 * @since 1.3
+	 */
+	void releaseLocal(int id) {
+		LocalVar var = _localVars.get(id);
+		
+		if(var != null && var.release())
+			_localVars.remove(id);
+	}
+	
 	/**
 	 * Generates a new unique integer ID
 	 * @return the new ID
 	 * @since 1.0
 	 */
 	public int newId() {
-		return _nextVarId++;
+		return _nextVarId.getAndIncrement();
 	}
 	
 	// Extracts values of the provided RtflType, including executing extractValue() if it is an AssignmentType
@@ -711,23 +1213,58 @@ public class RtflRuntime {
 	
 	public static class LocalVar {
 		public RtflType value = null;
-		public ArrayList<String> _owners = new ArrayList<String>();
 		public boolean notInUse = false;
+		// Name of the variable, only set for variables held in frame slots
+		public String name = null;
+		// Amount of scopes and async blocks holding this variable
+		private int _refs = 1;
+		// Whether this variable is visible to async blocks
+		private volatile boolean _shared = false;
 		
-		public LocalVar(RtflType val, String thread) {
+		public LocalVar(RtflType val) {
+			value = val;
+		}
+		public LocalVar(String varName, RtflType val) {
+			name = varName;
 			value = val;
-			_owners.add(thread);
 		}
 		
-		public void addOwner(String thread) {
-			_owners.add(thread);
+		/**
+		 * Adds a holder of this variable
+		 * @since 1.3
+		 */
+		public synchronized void retain() {
+			_refs++;
 		}
-		public void removeOwner(String thread) {
-			_owners.remove(thread);
-			
+		/**
+		 * Removes a holder of this variable
+		 * @return Whether this variable is no longer in use
+		 * @since 1.3
+		 */
+		public synchronized boolean release() {
 			// Notify runtime that it is ready for garbage collection if not in use
-			if(_owners.size() < 1)
+			if(--_refs < 1)
 				notInUse = true;
+			
+			return notInUse;
+		}
+		/**
+		 * Assigns a new value to this variable, sharing the value if this variable is visible to async blocks
+		 * @param val The new value
+		 * @since 1.3
+		 */
+		public void assign(RtflType val) {
+			if(_shared)
+				RtflType.share(val);
+			value = val;
+		}
+		/**
+		 * Marks this variable as visible to async blocks, sharing its value and all values assigned to it later
+		 * @since 1.3
+		 */
+		public void share() {
+			_shared = true;
+			RtflType.share(value);
 		}
 	}
 	
@@ -807,6 +1344,10 @@ public class RtflRuntime {
 				}
 			}
 			
+			RuntimeMetrics metrics = _rt._metrics;
+			if(metrics != null)
+				metrics.collected(deleted);
+			
 			return deleted;
 		}
 		
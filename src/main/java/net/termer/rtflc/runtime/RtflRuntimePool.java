@@ -0,0 +1,75 @@
+package net.termer.rtflc.runtime;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of runtimes forked from a snapshot, for embedders that need a fresh runtime for every request.
+ * Runtimes are restored to the snapshot's state when they are returned, so checking one out only has to take it from the pool.
+ * @author termer
+ * @since 1.3
+ */
+public class RtflRuntimePool {
+	private final RtflRuntimeSnapshot _snapshot;
+	private final int _maxIdle;
+	private final ConcurrentLinkedQueue<RtflRuntime> _idle = new ConcurrentLinkedQueue<RtflRuntime>();
+	private final AtomicInteger _idleCount = new AtomicInteger();
+	
+	/**
+	 * Creates a new pool of runtimes
+	 * @param snapshot The snapshot to fork runtimes from
+	 * @param maxIdle The maximum amount of returned runtimes to keep for reuse
+	 * @since 1.3
+	 */
+	public RtflRuntimePool(RtflRuntimeSnapshot snapshot, int maxIdle) {
+		_snapshot = snapshot;
+		_maxIdle = maxIdle;
+	}
+	
+	/**
+	 * Returns a runtime in the state of this pool's snapshot, forking a new one if none are idle
+	 * @return The runtime
+	 * @since 1.3
+	 */
+	public RtflRuntime checkout() {
+		RtflRuntime runtime = _idle.poll();
+		
+		if(runtime == null)
+			return _snapshot.fork();
+		
+		_idleCount.decrementAndGet();
+		return runtime;
+	}
+	/**
+	 * Returns a runtime to this pool, restoring it to the state of the snapshot.
+	 * If the maximum amount of idle runtimes is reached, the runtime is discarded instead.
+	 * The runtime must not be executing anything anymore, including async blocks, and must not be used after it is returned.
+	 * @param runtime The runtime to return
+	 * @since 1.3
+	 */
+	public void checkin(RtflRuntime runtime) {
+		if(_idleCount.incrementAndGet() > _maxIdle) {
+			_idleCount.decrementAndGet();
+			return;
+		}
+		
+		_snapshot.restore(runtime);
+		_idle.offer(runtime);
+	}
+	/**
+	 * Returns the snapshot this pool forks runtimes from
+	 * @return The snapshot
+	 * @since 1.3
+	 */
+	public RtflRuntimeSnapshot snapshot() {
+		return _snapshot;
+	}
+	/**
+	 * Returns the amount of runtimes waiting to be checked out
+	 * @return The amount of idle runtimes
+	 * @since 1.3
+	 */
+	public int idle() {
+		return _idleCount.get();
+	}
+}
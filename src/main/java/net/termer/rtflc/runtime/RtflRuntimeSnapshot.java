@@ -0,0 +1,119 @@
+package net.termer.rtflc.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.termer.rtflc.type.ArrayType;
+import net.termer.rtflc.type.MapType;
+import net.termer.rtflc.type.RtflType;
+
+/**
+ * Copy of a runtime's functions, global variables, required files and settings, taken with RtflRuntime.snapshot().
+ * Runtimes forked from a snapshot start out in the state the original runtime was in, without importing functions or requiring files again.
+ * Forks are isolated from the original and from each other: functions are shared, since defining or undefining one only changes the fork's own function table,
+ * but global arrays and maps are copied for every fork. Other values are immutable, except for wrapped Java objects, which are shared.
+ * Local variables are not part of snapshots.
+ * @author termer
+ * @since 1.3
+ */
+public class RtflRuntimeSnapshot {
+	private final HashMap<String, RtflFunction> _functions;
+	private final HashMap<String, RtflType> _globals = new HashMap<String, RtflType>();
+	private final ArrayList<String> _requiredFiles;
+	private final int _compileThreshold;
+	private final boolean _optimize;
+	private final AsyncScheduler _scheduler;
+	private final int _parallelism;
+	private final int _parallelChunkSize;
+	
+	/**
+	 * Takes a snapshot of the specified runtime
+	 * @param runtime The runtime
+	 * @since 1.3
+	 */
+	RtflRuntimeSnapshot(RtflRuntime runtime) {
+		_functions = new HashMap<String, RtflFunction>(runtime.functions());
+		_requiredFiles = new ArrayList<String>(runtime.requiredFiles());
+		_compileThreshold = runtime.compileThreshold();
+		_optimize = runtime.optimize();
+		_scheduler = runtime.asyncScheduler();
+		_parallelism = runtime.parallelism();
+		_parallelChunkSize = runtime.parallelChunkSize();
+		
+		// Copied so later changes to the original do not end up in forks
+		IdentityHashMap<RtflType, RtflType> copies = new IdentityHashMap<RtflType, RtflType>();
+		for(Map.Entry<String, RtflType> global : runtime.globalVarables().entrySet())
+			_globals.put(global.getKey(), copy(global.getValue(), copies));
+	}
+	
+	/**
+	 * Creates a new runtime in the state of this snapshot
+	 * @return The new runtime
+	 * @since 1.3
+	 */
+	public RtflRuntime fork() {
+		RtflRuntime runtime = new RtflRuntime();
+		restore(runtime);
+		
+		return runtime;
+	}
+	/**
+	 * Puts an existing runtime back in the state of this snapshot, deleting all of its functions, global and local variables.
+	 * The runtime must not be executing anything, including async blocks.
+	 * @param runtime The runtime to restore
+	 * @since 1.3
+	 */
+	public void restore(RtflRuntime runtime) {
+		runtime.reset();
+		runtime.requiredFiles().addAll(_requiredFiles);
+		
+		runtime.functions().copyFrom(_functions);
+		
+		Map<String, RtflType> globals = runtime.globalVarables();
+		globals.clear();
+		IdentityHashMap<RtflType, RtflType> copies = new IdentityHashMap<RtflType, RtflType>();
+		for(Map.Entry<String, RtflType> global : _globals.entrySet()) {
+			globals.put(global.getKey(), copy(global.getValue(), copies));
+		}
+		
+		runtime
+			.compileThreshold(_compileThreshold)
+			.optimize(_optimize)
+			.asyncScheduler(_scheduler)
+			.parallelChunkSize(_parallelChunkSize);
+		if(runtime.parallelism() != _parallelism)
+			runtime.parallelism(_parallelism);
+	}
+	
+	// Copies arrays and maps along with the arrays and maps they contain, values reachable more than once are copied once
+	private static RtflType copy(RtflType val, IdentityHashMap<RtflType, RtflType> copies) {
+		if(!(val instanceof ArrayType || val instanceof MapType))
+			return val;
+		
+		RtflType done = copies.get(val);
+		if(done != null)
+			return done;
+		
+		if(val instanceof ArrayType) {
+			ArrayType arr = (ArrayType) val;
+			ArrayType res = new ArrayType();
+			copies.put(val, res);
+			
+			for(int i = 0; i < arr.length(); i++)
+				res.add(copy(arr.get(i), copies));
+			
+			return res;
+		} else {
+			MapType map = (MapType) val;
+			MapType res = new MapType();
+			copies.put(val, res);
+			
+			for(String key : map.keys())
+				res.put(key, copy(map.get(key), copies));
+			
+			return res;
+		}
+	}
+}
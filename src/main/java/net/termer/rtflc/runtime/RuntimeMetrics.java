@@ -0,0 +1,229 @@
+package net.termer.rtflc.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.termer.rtflc.instructions.Opcodes;
+
+/**
+ * Counters and gauges of what a runtime is doing, enabled with RtflRuntime.enableMetrics().
+ * Counters are striped, so threads executing at the same time do not contend on them.
+ * Metrics can be exposed over JMX with register().
+ * @author termer
+ * @since 1.3
+ */
+public class RuntimeMetrics implements RuntimeMetricsMXBean {
+	private final RtflRuntime _rt;
+	private final LongAdder[] _instructions = new LongAdder[OPCODE_NAMES.length];
+	private final ConcurrentHashMap<String, LongAdder> _calls = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder _asyncStarted = new LongAdder();
+	private final LongAdder _asyncFinished = new LongAdder();
+	private final LongAdder _asyncFailed = new LongAdder();
+	private final LongAdder _gcCollections = new LongAdder();
+	private final LongAdder _gcReclaimed = new LongAdder();
+	private final LongAdder _parses = new LongAdder();
+	private final LongAdder _parseNanos = new LongAdder();
+	private final LongAdder _loads = new LongAdder();
+	private final LongAdder _loadNanos = new LongAdder();
+	private ObjectName _name = null;
+	
+	// Names of all opcodes, indexed by opcode
+	private static final String[] OPCODE_NAMES = opcodeNames();
+	private static final AtomicInteger _nextId = new AtomicInteger();
+	
+	/**
+	 * Creates new metrics for the specified runtime
+	 * @param runtime The runtime
+	 * @since 1.3
+	 */
+	RuntimeMetrics(RtflRuntime runtime) {
+		_rt = runtime;
+		for(int i = 0; i < _instructions.length; i++)
+			_instructions[i] = new LongAdder();
+	}
+	
+	/**
+	 * Registers these metrics with the platform MBean server, under the name net.termer.rtflc:type=RtflRuntime,id=ID
+	 * @return this, to be used fluently
+	 * @throws JMException If registering fails
+	 * @since 1.3
+	 */
+	public synchronized RuntimeMetrics register() throws JMException {
+		if(_name == null) {
+			ObjectName name = new ObjectName("net.termer.rtflc:type=RtflRuntime,id="+_nextId.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			_name = name;
+		}
+		
+		return this;
+	}
+	/**
+	 * Unregisters these metrics from the platform MBean server, if they were registered
+	 * @return this, to be used fluently
+	 * @throws JMException If unregistering fails
+	 * @since 1.3
+	 */
+	public synchronized RuntimeMetrics unregister() throws JMException {
+		if(_name != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(_name))
+				server.unregisterMBean(_name);
+			_name = null;
+		}
+		
+		return this;
+	}
+	/**
+	 * Returns the name these metrics are registered under
+	 * @return The name, or null if they are not registered
+	 * @since 1.3
+	 */
+	public synchronized ObjectName name() {
+		return _name;
+	}
+	
+	// Recording, done by the runtime
+	void instruction(int opcode) {
+		_instructions[opcode].increment();
+	}
+	void call(String name) {
+		LongAdder calls = _calls.get(name);
+		if(calls == null)
+			calls = _calls.computeIfAbsent(name, k -> new LongAdder());
+		calls.increment();
+	}
+	void asyncStarted() {
+		_asyncStarted.increment();
+	}
+	void asyncFinished(boolean failed) {
+		_asyncFinished.increment();
+		if(failed)
+			_asyncFailed.increment();
+	}
+	void collected(int reclaimed) {
+		_gcCollections.increment();
+		_gcReclaimed.add(reclaimed);
+	}
+	void parsed(long nanos) {
+		_parses.increment();
+		_parseNanos.add(nanos);
+	}
+	void loaded(long nanos) {
+		_loads.increment();
+		_loadNanos.add(nanos);
+	}
+	
+	public Map<String, Long> getInstructionsByType() {
+		HashMap<String, Long> res = new HashMap<String, Long>();
+		for(int i = 0; i < _instructions.length; i++)
+			if(OPCODE_NAMES[i] != null)
+				res.put(OPCODE_NAMES[i], _instructions[i].sum());
+		
+		return res;
+	}
+	public long getInstructions() {
+		long total = 0;
+		for(LongAdder count : _instructions)
+			total += count.sum();
+		
+		return total;
+	}
+	public Map<String, Long> getFunctionCalls() {
+		HashMap<String, Long> res = new HashMap<String, Long>();
+		for(Map.Entry<String, LongAdder> calls : _calls.entrySet())
+			res.put(calls.getKey(), calls.getValue().sum());
+		
+		return res;
+	}
+	
+	public int getLocalVariables() {
+		return _rt.localVariables().size();
+	}
+	public int getGlobalVariables() {
+		return _rt.globalVarables().size();
+	}
+	public int getFunctions() {
+		return _rt.functions().size();
+	}
+	
+	public long getAsyncStarted() {
+		return _asyncStarted.sum();
+	}
+	public long getAsyncRunning() {
+		// Read finished blocks first, so blocks finishing in between are not counted as running a negative amount of times
+		long finished = _asyncFinished.sum();
+		return Math.max(0, _asyncStarted.sum()-finished);
+	}
+	public long getAsyncFailed() {
+		return _asyncFailed.sum();
+	}
+	
+	public long getGcCollections() {
+		return _gcCollections.sum();
+	}
+	public long getGcReclaimed() {
+		return _gcReclaimed.sum();
+	}
+	
+	public long getParses() {
+		return _parses.sum();
+	}
+	public long getParseTimeMicros() {
+		return _parseNanos.sum()/1000;
+	}
+	public long getBytecodeLoads() {
+		return _loads.sum();
+	}
+	public long getBytecodeLoadTimeMicros() {
+		return _loadNanos.sum()/1000;
+	}
+	
+	public void reset() {
+		for(LongAdder count : _instructions)
+			count.reset();
+		_calls.clear();
+		_asyncStarted.reset();
+		_asyncFinished.reset();
+		_asyncFailed.reset();
+		_gcCollections.reset();
+		_gcReclaimed.reset();
+		_parses.reset();
+		_parseNanos.reset();
+		_loads.reset();
+		_loadNanos.reset();
+	}
+	
+	// Reads the names of all opcodes from the constants in Opcodes
+	private static String[] opcodeNames() {
+		HashMap<Integer, String> names = new HashMap<Integer, String>();
+		int max = -1;
+		
+		for(Field field : Opcodes.class.getFields()) {
+			if(Modifier.isStatic(field.getModifiers()) && field.getType() == int.class) {
+				try {
+					int opcode = field.getInt(null);
+					names.put(opcode, field.getName());
+					max = Math.max(max, opcode);
+				} catch(IllegalAccessException e) {
+					// Public constants are always accessible
+				}
+			}
+		}
+		
+		String[] res = new String[max+1];
+		for(Map.Entry<Integer, String> name : names.entrySet())
+			res[name.getKey()] = name.getValue();
+		
+		return res;
+	}
+}
@@ -0,0 +1,111 @@
+package net.termer.rtflc.runtime;
+
+import java.util.Map;
+
+/**
+ * Management interface of RuntimeMetrics, exposed over JMX
+ * @author termer
+ * @since 1.3
+ */
+public interface RuntimeMetricsMXBean {
+	/**
+	 * Returns the amount of instructions executed, keyed by instruction type
+	 * @return The executed instructions by type
+	 * @since 1.3
+	 */
+	public Map<String, Long> getInstructionsByType();
+	/**
+	 * Returns the total amount of instructions executed
+	 * @return The amount of executed instructions
+	 * @since 1.3
+	 */
+	public long getInstructions();
+	/**
+	 * Returns the amount of calls made to every function, keyed by function name
+	 * @return The function calls by name
+	 * @since 1.3
+	 */
+	public Map<String, Long> getFunctionCalls();
+	
+	/**
+	 * Returns the amount of live local variables
+	 * @return The amount of local variables
+	 * @since 1.3
+	 */
+	public int getLocalVariables();
+	/**
+	 * Returns the amount of global variables
+	 * @return The amount of global variables
+	 * @since 1.3
+	 */
+	public int getGlobalVariables();
+	/**
+	 * Returns the amount of defined functions
+	 * @return The amount of functions
+	 * @since 1.3
+	 */
+	public int getFunctions();
+	
+	/**
+	 * Returns the amount of async blocks started
+	 * @return The amount of started async blocks
+	 * @since 1.3
+	 */
+	public long getAsyncStarted();
+	/**
+	 * Returns the amount of async blocks that were started and have not finished yet
+	 * @return The amount of running async blocks
+	 * @since 1.3
+	 */
+	public long getAsyncRunning();
+	/**
+	 * Returns the amount of async blocks that failed with an error
+	 * @return The amount of failed async blocks
+	 * @since 1.3
+	 */
+	public long getAsyncFailed();
+	
+	/**
+	 * Returns the amount of times the garbage collector ran
+	 * @return The amount of collections
+	 * @since 1.3
+	 */
+	public long getGcCollections();
+	/**
+	 * Returns the amount of local variables deleted by the garbage collector
+	 * @return The amount of reclaimed local variables
+	 * @since 1.3
+	 */
+	public long getGcReclaimed();
+	
+	/**
+	 * Returns the amount of scripts parsed from source code
+	 * @return The amount of parsed scripts
+	 * @since 1.3
+	 */
+	public long getParses();
+	/**
+	 * Returns the total time spent parsing source code, in microseconds
+	 * @return The time spent parsing
+	 * @since 1.3
+	 */
+	public long getParseTimeMicros();
+	/**
+	 * Returns the amount of compiled files loaded
+	 * @return The amount of loaded compiled files
+	 * @since 1.3
+	 */
+	public long getBytecodeLoads();
+	/**
+	 * Returns the total time spent loading compiled files, in microseconds
+	 * @return The time spent loading compiled files
+	 * @since 1.3
+	 */
+	public long getBytecodeLoadTimeMicros();
+	
+	/**
+	 * Resets all counters to zero
+	 * @since 1.3
+	 */
+	public void reset();
+}
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import net.termer.rtflc.runtime.RtflRuntime;
 import net.termer.rtflc.runtime.RtflRuntime.LocalVar;
 import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.type.IntType;
 import net.termer.rtflc.type.RtflType;
 
 /**
@@ -16,7 +17,7 @@ import net.termer.rtflc.type.RtflType;
 public class Scope {
 	// Runtime
 	private RtflRuntime rt = null;
-	// Local variable aliases
+	// Aliases of local variables defined in this scope, created when the first one is defined
 	private HashMap<String, Integer> locals = null;
 	// Parent scope, if any
 	private Scope parent = null;
@@ -24,37 +25,57 @@ public class Scope {
 	private RtflInstruction cause = null;
 	// List of functions that may not be executed in this scope
 	private ArrayList<String> restrictedFuncs = new ArrayList<String>();
+	// Local variable slots of the frame this scope belongs to
+	private LocalVar[] frame = EMPTY_FRAME;
+	// Arguments of the function call this scope belongs to whose argN and arglen variables have not been defined yet
+	private RtflType[] args = null;
+	// Budget that limits executions in this scope, if any
+	private ExecutionBudget budget = null;
+	// Listener notified of executions in this scope, if any
+	private ExecutionListener listener = null;
+	
+	private static final LocalVar[] EMPTY_FRAME = new LocalVar[0];
+	// argN variable names for the first arguments, so they are not concatenated on every call
+	private static final String[] ARG_NAMES = new String[16];
+	private static final String ARGLEN = "arglen";
+	
+	static {
+		for(int i = 0; i < ARG_NAMES.length; i++)
+			ARG_NAMES[i] = "arg"+(i+1);
+	}
 	
 	/**
 	 * Instantiates a new Scope object
 	 * @param runtime the Runtime associated with this scope
-	 * @param localAliases all aliases to local variables visible to this scope
+	 * @param localAliases aliases to local variables defined in this scope
 	 * @param causeInstruction the instruction that caused this new scope
 	 * @since 1.0
 	 */
 	public Scope(RtflRuntime runtime, HashMap<String, Integer> localAliases, RtflInstruction causeInstruction) {
 		rt = runtime;
-		locals = localAliases == null ? new HashMap<String, Integer>() : localAliases;
+		locals = localAliases;
 		cause = causeInstruction;
 	}
 	/**
 	 * Instantiates a new Scope object
 	 * @param runtime the Runtime associated with this scope
-	 * @param localAliases all aliases to local variables visible to this scope
+	 * @param localAliases aliases to local variables defined in this scope
 	 * @param causeInstruction the instruction that caused this new scope
 	 * @param parentScope the scope above this scope
 	 * @since 1.0
 	 */
 	public Scope(RtflRuntime runtime, HashMap<String, Integer> localAliases, RtflInstruction causeInstruction, Scope parentScope) {
 		rt = runtime;
-		locals = localAliases == null ? new HashMap<String, Integer>() : localAliases;
+		locals = localAliases;
 		cause = causeInstruction;
 		parent = parentScope;
+		budget = parentScope == null ? null : parentScope.budget;
+		listener = parentScope == null ? null : parentScope.listener;
 	}
 	/**
 	 * Instantiates a new Scope object
 	 * @param runtime the Runtime associated with this scope
-	 * @param localAliases all aliases to local variables visible to this scope
+	 * @param localAliases aliases to local variables defined in this scope
 	 * @param restrictedFunctions a list of functions that cannot be called in this scope or any of its children
 	 * @param causeInstruction the instruction that caused this new scope
 	 * @param parentScope the scope above this scope
@@ -62,10 +83,22 @@ public class Scope {
 	 */
 	public Scope(RtflRuntime runtime, HashMap<String, Integer> localAliases, ArrayList<String> restrictedFunctions, RtflInstruction causeInstruction, Scope parentScope) {
 		rt = runtime;
-		locals = localAliases == null ? new HashMap<String, Integer>() : localAliases;
+		locals = localAliases;
+		restrictedFuncs = restrictedFunctions;
+		cause = causeInstruction;
+		parent = parentScope;
+		budget = parentScope == null ? null : parentScope.budget;
+		listener = parentScope == null ? null : parentScope.listener;
+	}
+	private Scope(RtflRuntime runtime, HashMap<String, Integer> localAliases, ArrayList<String> restrictedFunctions, RtflInstruction causeInstruction, Scope parentScope, LocalVar[] localFrame, ExecutionBudget executionBudget, ExecutionListener executionListener) {
+		rt = runtime;
+		locals = localAliases;
 		restrictedFuncs = restrictedFunctions;
 		cause = causeInstruction;
 		parent = parentScope;
+		frame = localFrame;
+		budget = executionBudget;
+		listener = executionListener;
 	}
 	
 	/**
@@ -93,12 +126,34 @@ public class Scope {
 		return cause;
 	}
 	/**
-	 * Returns a map of local variable name aliases to their internal IDs
+	 * Returns a map of all local variable name aliases visible to this scope to their internal IDs.
+	 * Aliases are stored in the scope that defined them, so the map is built from this scope and its parents, and changes to it have no effect.
 	 * @return a map of local variable aliases
 	 * @since 1.0
 	 */
 	public HashMap<String, Integer> variableAliases() {
-		return locals;
+		ArrayList<Scope> chain = chain();
+		HashMap<String, Integer> aliases = new HashMap<String, Integer>();
+		
+		// Inner aliases shadow outer ones
+		for(int i = chain.size()-1; i >= 0; i--) {
+			Scope scp = chain.get(i);
+			if(scp.args != null)
+				scp.defineArguments();
+			if(scp.locals != null)
+				aliases.putAll(scp.locals);
+		}
+		
+		return aliases;
+	}
+	/**
+	 * Returns the local variable slots of the frame this scope belongs to.
+	 * Scopes created by descend() share their parent's frame.
+	 * @return this scope's frame
+	 * @since 1.3
+	 */
+	public LocalVar[] frame() {
+		return frame;
 	}
 	
 	/**
@@ -113,16 +168,10 @@ public class Scope {
 	 */
 	public boolean assignVar(String varName, RtflType value) throws RuntimeException {
 		boolean local = false;
-		if(locals.containsKey(varName)) {
-			int id = locals.get(varName);
-			// Check if variable actually exists
-			if(rt.localVariables().containsKey(id)) {
-				local = true;
-				rt.localVariables().replace(id, new LocalVar(value, Thread.currentThread().getName()));
-			} else {
-				locals.remove(varName);
-				throw new RuntimeException("Attempted to assign value to undefined variable \""+varName+"\"");
-			}
+		LocalVar var = findLocal(varName);
+		if(var != null) {
+			local = true;
+			var.assign(value);
 		} else if(rt.globalVarables().containsKey(varName)) {
 			rt.globalVarables().replace(varName, value);
 		} else {
@@ -142,11 +191,15 @@ public class Scope {
 	public int createLocalVar(String varName, RtflType value) {
 		int id = rt.newId();
 		
-		if(locals.containsKey(varName))
-			locals.remove(varName);
+		if(locals == null)
+			locals = new HashMap<String, Integer>();
 		
-		rt.localVariables().put(id, new LocalVar(value, Thread.currentThread().getName()));
-		locals.put(varName, id);
+		rt.localVariables().put(id, new LocalVar(value));
+		
+		// Release the variable this one replaces
+		Integer replaced = locals.put(varName, id);
+		if(replaced != null)
+			rt.releaseLocal(replaced);
 		
 		return id;
 	}
@@ -156,22 +209,50 @@ public class Scope {
 	 * Throws a RuntimeException if no variable with the specified name exists
 	 * @param varName the name of the variable to undefine
 	 * @throws RuntimeException if no variable with the specified name exists
-	 * @return The ID of the local variable that was undefined. -1 if it was global.
+	 * @return The ID of the local variable that was undefined. -1 if it was global or held in a frame slot.
 	 * @since 1.0
 	 */
 	public int undefineVar(String varName) throws RuntimeException {
-		int localId = -1;
-		if(locals.containsKey(varName)) {
-			int id = locals.get(varName);
-			localId = id;
-			locals.remove(varName);
-			rt.localVariables().remove(id);
-		} else if(rt.globalVarables().containsKey(varName)) {
+		LocalVar[] last = null;
+		for(Scope scp = this; scp != null; scp = scp.parent) {
+			if(scp.frame != last) {
+				last = scp.frame;
+				
+				for(int i = last.length-1; i >= 0; i--) {
+					if(last[i] != null && varName.equals(last[i].name)) {
+						last[i] = null;
+						return -1;
+					}
+				}
+			}
+			if(scp.args != null && isArgumentName(varName))
+				scp.defineArguments();
+			if(scp.locals != null && scp.locals.containsKey(varName)) {
+				int id = scp.locals.remove(varName);
+				rt.localVariables().remove(id);
+				return id;
+			}
+		}
+		
+		if(rt.globalVarables().containsKey(varName)) {
 			rt.globalVarables().remove(varName);
 		} else {
 			throw new RuntimeException("Attempted undefine undefined variable \""+varName+"\"");
 		}
-		return localId;
+		return -1;
+	}
+	/**
+	 * Releases all local variables defined in this scope.
+	 * Called when the scope exits; variables that are still held by async blocks are deleted once those finish.
+	 * @since 1.3
+	 */
+	public void release() {
+		args = null;
+		if(locals != null) {
+			for(int id : locals.values())
+				rt.releaseLocal(id);
+			locals = null;
+		}
 	}
 	/**
 	 * Undefines the specified function
@@ -183,6 +264,14 @@ public class Scope {
 			rt.functions().remove(funcName);
 		}
 	}
+	/**
+	 * Returns whether any functions are restricted in this Scope
+	 * @return Whether any functions are restricted
+	 * @since 1.3
+	 */
+	public boolean hasRestrictions() {
+		return !restrictedFuncs.isEmpty();
+	}
 	/**
 	 * Restricts a function from being executed in this Scope
 	 * @param funcName The name of the function to restrict
@@ -203,18 +292,10 @@ public class Scope {
 	 */
 	public RtflType varValue(String varName) throws RuntimeException {
 		RtflType val = null;
+		LocalVar var = findLocal(varName);
 		
-		if(locals.containsKey(varName)) {
-			int id = locals.get(varName);
-			
-			// Check if variable actually exists
-			LocalVar var = rt.localVariables().get(id);
-			if(var == null) {
-				locals.remove(varName);
-				throw new RuntimeException("Attempted to retrieve value from undefined variable \""+varName+"\"");
-			} else {
-				val = var.value;
-			}
+		if(var != null) {
+			val = var.value;
 		} else if(rt.globalVarables().containsKey(varName)) {
 			val = rt.globalVarables().get(varName);
 		} else {
@@ -223,6 +304,20 @@ public class Scope {
 		
 		return val;
 	}
+	/**
+	 * Returns the value of the local variable in the specified slot of this scope's frame.
+	 * If the slot is empty, the variable is looked up by name like varValue(String) does.
+	 * @param slot the frame slot the variable was resolved to
+	 * @param varName the variable name
+	 * @return the variable's value
+	 * @throws RuntimeException if no variable with the specified name exists
+	 * @since 1.3
+	 */
+	public RtflType varValue(int slot, String varName) throws RuntimeException {
+		LocalVar var = slot < frame.length ? frame[slot] : null;
+		
+		return var == null ? varValue(varName) : var.value;
+	}
 	/**
 	 * Returns the function with the specified name.
 	 * @param funcName the function name
@@ -231,13 +326,10 @@ public class Scope {
 	 * @since 1.0
 	 */
 	public RtflFunction function(String funcName) throws RuntimeException {
-		RtflFunction func = null;
+		RtflFunction func = rt.functions().get(funcName);
 		
-		if(restrictedFuncs.contains(funcName) || !rt.functions().containsKey(funcName)) {
+		if(func == null || restrictedFuncs.contains(funcName))
 			throw new RuntimeException("Attempted to call undefined or restricted function \""+funcName+"\"");
-		} else {
-			func = rt.functions().get(funcName);
-		}
 		
 		return func;
 	}
@@ -264,20 +356,193 @@ public class Scope {
 	}
 	
 	/**
-	 * Descends a level and provides a new (non-reference) Scope for that level
+	 * Descends a level and provides a new Scope for that level.
+	 * The new Scope sees all local variables of this scope through its parent, and local variables defined in it shadow them.
 	 * @param causeInstruction the instruction that caused this new scope
 	 * @return the new Scope for a lower level
 	 * @since 1.0
 	 */
 	public Scope descend(RtflInstruction causeInstruction) {
-		return new Scope(rt, copyLocals(), restrictedFuncs, causeInstruction, this);
+		return new Scope(rt, null, restrictedFuncs, causeInstruction, this, frame, budget, listener);
+	}
+	/**
+	 * Descends a level and provides a new Scope for that level with its own frame of local variable slots.
+	 * Used to execute function bodies and top level instructions.
+	 * @param frameSize the amount of local variable slots in the new frame
+	 * @param causeInstruction the instruction that caused this new scope
+	 * @return the new Scope for a lower level
+	 * @since 1.3
+	 */
+	public Scope descendFrame(int frameSize, RtflInstruction causeInstruction) {
+		return descendFrame(frameSize, causeInstruction, listener);
+	}
+	/**
+	 * Descends a level and provides a new Scope for that level with its own frame of local variable slots, whose executions notify the specified listener.
+	 * Used to start executing top level instructions.
+	 * @param frameSize the amount of local variable slots in the new frame
+	 * @param causeInstruction the instruction that caused this new scope
+	 * @param executionListener the listener, or null to not notify any
+	 * @return the new Scope for a lower level
+	 * @since 1.3
+	 */
+	Scope descendFrame(int frameSize, RtflInstruction causeInstruction, ExecutionListener executionListener) {
+		return new Scope(rt, null, restrictedFuncs, causeInstruction, this, frameSize == 0 ? EMPTY_FRAME : new LocalVar[frameSize], budget, executionListener);
+	}
+	/**
+	 * Descends a level and provides a new Scope for that level whose executions are limited by the specified budget.
+	 * The budget applies to all scopes below the new Scope, including those of async blocks started in them.
+	 * @param executionBudget the budget
+	 * @return the new Scope for a lower level
+	 * @since 1.3
+	 */
+	public Scope descendBudgeted(ExecutionBudget executionBudget) {
+		return new Scope(rt, null, restrictedFuncs, cause, this, frame, executionBudget, listener);
+	}
+	/**
+	 * Returns the budget that limits executions in this scope
+	 * @return the budget, or null if executions are not limited
+	 * @since 1.3
+	 */
+	public ExecutionBudget budget() {
+		return budget;
+	}
+	/**
+	 * Returns the listener notified of executions in this scope
+	 * @return the listener, or null if none is notified
+	 * @since 1.3
+	 */
+	public ExecutionListener listener() {
+		return listener;
+	}
+	/**
+	 * Binds the arguments of a function call to this scope.
+	 * The argN and arglen variables of the arguments are only defined as local variables of this scope once something looks one of them up by name.
+	 * @param arguments the arguments passed to the function
+	 * @since 1.3
+	 */
+	void bindArguments(RtflType[] arguments) {
+		args = arguments;
+	}
+	/**
+	 * Returns a copy of this scope and all of its parents whose frames and aliases are copies of the originals.
+	 * The copies share the same local variables, but defining or undefining a variable in a copy does not affect the original.
+	 * Used to give async blocks a view of their surroundings that is not changed when the surrounding code moves on.
+	 * @return the snapshot of this scope
+	 * @since 1.3
+	 */
+	public Scope snapshot() {
+		ArrayList<Scope> chain = chain();
+		
+		Scope copy = null;
+		LocalVar[] lastFrame = null;
+		LocalVar[] lastCopy = null;
+		for(int i = chain.size()-1; i >= 0; i--) {
+			Scope scp = chain.get(i);
+			
+			// The copy needs the argument variables of the original
+			if(scp.args != null)
+				scp.defineArguments();
+			
+			// Consecutive scopes of the same frame keep sharing it
+			if(scp.frame != lastFrame) {
+				lastFrame = scp.frame;
+				lastCopy = lastFrame.length == 0 ? EMPTY_FRAME : lastFrame.clone();
+			}
+			HashMap<String, Integer> aliases = scp.locals == null ? null : new HashMap<String, Integer>(scp.locals);
+			copy = new Scope(rt, aliases, scp.restrictedFuncs, scp.cause, copy, lastCopy, scp.budget, scp.listener);
+		}
+		
+		return copy;
+	}
+	
+	/**
+	 * Shares all local variables visible from this scope, so their values can be used by another thread
+	 * @since 1.3
+	 */
+	void share() {
+		LocalVar[] last = null;
+		
+		for(Scope scp = this; scp != null; scp = scp.parent) {
+			if(scp.frame != last) {
+				last = scp.frame;
+				
+				for(LocalVar var : last)
+					if(var != null)
+						var.share();
+			}
+			if(scp.locals != null) {
+				for(int id : scp.locals.values()) {
+					LocalVar var = rt.localVariables().get(id);
+					if(var != null)
+						var.share();
+				}
+			}
+		}
 	}
 	
-	private HashMap<String, Integer> copyLocals() {
-		HashMap<String, Integer> newMap = new HashMap<String, Integer>();
+	// Finds the innermost local variable with the specified name.
+	// Each frame's slots are checked before the aliases of the scopes that belong to it.
+	private LocalVar findLocal(String varName) {
+		LocalVar[] last = null;
+		
+		for(Scope scp = this; scp != null; scp = scp.parent) {
+			if(scp.frame != last) {
+				last = scp.frame;
+				
+				// Inner blocks use higher slots
+				for(int i = last.length-1; i >= 0; i--)
+					if(last[i] != null && varName.equals(last[i].name))
+						return last[i];
+			}
+			if(scp.args != null && isArgumentName(varName))
+				scp.defineArguments();
+			if(scp.locals != null) {
+				Integer id = scp.locals.get(varName);
+				
+				if(id != null) {
+					// Check if variable actually exists
+					LocalVar var = rt.localVariables().get(id);
+					if(var != null)
+						return var;
+					scp.locals.remove(varName);
+				}
+			}
+		}
+		
+		return null;
+	}
+	// Defines the argN and arglen variables of the arguments bound to this scope
+	private void defineArguments() {
+		RtflType[] arguments = args;
+		args = null;
+		
+		for(int i = 0; i < arguments.length; i++)
+			createLocalVar(i < ARG_NAMES.length ? ARG_NAMES[i] : "arg"+(i+1), arguments[i]);
+		createLocalVar(ARGLEN, IntType.of(arguments.length));
+	}
+	// Returns whether the name is arglen or argN, the names of the variables defined for the arguments of a function call
+	private static boolean isArgumentName(String name) {
+		if(name.length() < 4 || !name.startsWith("arg"))
+			return false;
+		if(name.equals(ARGLEN))
+			return true;
+		
+		// argN, without leading zeros
+		if(name.charAt(3) == '0')
+			return false;
+		for(int i = 3; i < name.length(); i++)
+			if(name.charAt(i) < '0' || name.charAt(i) > '9')
+				return false;
+		
+		return true;
+	}
+	// Returns this scope and all of its parents, starting with this scope
+	private ArrayList<Scope> chain() {
+		ArrayList<Scope> chain = new ArrayList<Scope>();
 		
-		newMap.putAll(locals);
+		for(Scope scp = this; scp != null; scp = scp.parent)
+			chain.add(scp);
 		
-		return newMap;
+		return chain;
 	}
 }
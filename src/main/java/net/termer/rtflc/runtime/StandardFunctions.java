@@ -11,10 +11,13 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -24,6 +27,7 @@ import net.termer.rtflc.producers.ProducerException;
 import net.termer.rtflc.producers.SourcecodeInstructionProducer;
 import net.termer.rtflc.type.ArrayType;
 import net.termer.rtflc.type.BoolType;
+import net.termer.rtflc.type.FutureType;
 import net.termer.rtflc.type.IntType;
 import net.termer.rtflc.type.MapType;
 import net.termer.rtflc.type.NullType;
@@ -43,8 +47,9 @@ import static net.termer.rtflc.utils.IOUtils.*;
  */
 public class StandardFunctions {
 	private HashMap<String, RtflFunction> funcs = new HashMap<String, RtflFunction>();
-	// Files loaded by the require() function
-	private ArrayList<String> requiredFiles = new ArrayList<String>();
+	
+	// Functions shared by all runtimes that import them
+	private static Map<String, RtflFunction> _shared = null;
 	
 	public StandardFunctions() {
 		/* Create functions */
@@ -52,104 +57,35 @@ public class StandardFunctions {
 		funcs.put("print", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				for(RtflType arg : args)
-					System.out.print(arg.value());
+					System.out.print(printable(arg));
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("println", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				for(RtflType arg : args)
-					System.out.print(arg.value());
+					System.out.print(printable(arg));
 				System.out.println();
 				
-				return new NullType();
-			}
-		});
-		funcs.put("add", new RtflFunction() {
-			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType num = new NullType();
-				
-				if(args.length > 1) {
-					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						if(args[0] instanceof DoubleType || args[1] instanceof DoubleType) {
-							num = new DoubleType(((NumberType) args[0]).toDouble() + ((NumberType) args[1]).toDouble());
-						} else {
-							num = new IntType(((int) args[0].value()) + ((int) args[1].value()));
-						}
-					}
-				} else {
-					throw new RuntimeException("Must provide at least 2 arguments");
-				}
-				
-				return num;
-			}
-		});
-		funcs.put("sub", new RtflFunction() {
-			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType num = new NullType();
-				
-				if(args.length > 1) {
-					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						if(args[0] instanceof DoubleType || args[1] instanceof DoubleType) {
-							num = new DoubleType(((NumberType) args[0]).toDouble() - ((NumberType) args[1]).toDouble());
-						} else {
-							num = new IntType(((int) args[0].value()) - ((int) args[1].value()));
-						}
-					}
-				} else {
-					throw new RuntimeException("Must provide at least 2 arguments");
-				}
-				
-				return num;
-			}
-		});
-		funcs.put("mul", new RtflFunction() {
-			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType num = new NullType();
-				
-				if(args.length > 1) {
-					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						if(args[0] instanceof DoubleType || args[1] instanceof DoubleType) {
-							num = new DoubleType(((NumberType) args[0]).toDouble() * ((NumberType) args[1]).toDouble());
-						} else {
-							num = new IntType(((int) args[0].value()) * ((int) args[1].value()));
-						}
-					}
-				} else {
-					throw new RuntimeException("Must provide at least 2 arguments");
-				}
-				
-				return num;
-			}
-		});
-		funcs.put("div", new RtflFunction() {
-			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType num = new NullType();
-				
-				if(args.length > 1) {
-					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						double dbl = ((NumberType) args[0]).toDouble() / ((NumberType) args[1]).toDouble();
-						
-						// Check is result is an int
-						if(dbl == Math.floor(dbl) && !Double.isInfinite(dbl))
-							num = new IntType((int) dbl);
-						else
-							num = new DoubleType(dbl);
-					}
-				} else {
-					throw new RuntimeException("Must provide at least 2 arguments");
-				}
-				
-				return num;
+				return NullType.INSTANCE;
 			}
 		});
+		funcs.put("add", new ArithmeticFunction(ArithmeticFunction.Operation.ADD));
+		funcs.put("sub", new ArithmeticFunction(ArithmeticFunction.Operation.SUB));
+		funcs.put("mul", new ArithmeticFunction(ArithmeticFunction.Operation.MUL));
+		funcs.put("div", new ArithmeticFunction(ArithmeticFunction.Operation.DIV));
 		funcs.put("sleep", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				if(args.length > 0) {
 					if(args[0] instanceof NumberType) {
 						try {
-							Thread.sleep(((NumberType) args[0]).toInt());
+							// Budgets wake up sleeping executions when they are cancelled
+							ExecutionBudget budget = scope.budget();
+							if(budget == null)
+								Thread.sleep(((NumberType) args[0]).toInt());
+							else
+								budget.sleep(((NumberType) args[0]).toInt());
 						} catch (InterruptedException e) {
 							throw new RuntimeException("Failed to sleep because of internal error: "+e.getMessage());
 						}
@@ -160,30 +96,79 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("gc", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) {
-				return new IntType(runtime.garbageCollector().collect());
+				return IntType.of(runtime.garbageCollector().collect());
 			}
 		});
 		funcs.put("gc_pause", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) {
 				runtime.garbageCollector().pause();
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("gc_resume", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) {
 				runtime.garbageCollector().unpause();
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("eval", new EvalFunction(false, false));
 		funcs.put("async", new EvalFunction(true, false));
 		funcs.put("load", new EvalFunction(false, true));
 		funcs.put("load_async", new EvalFunction(true, true));
+		funcs.put("await", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				RtflType val = NullType.INSTANCE;
+				
+				if(args.length > 0) {
+					if(args[0] instanceof FutureType) {
+						FutureType future = (FutureType) args[0];
+						
+						// Wait for a limited amount of time if a timeout is provided
+						if(args.length > 1) {
+							if(args[1] instanceof NumberType)
+								val = future.await(((NumberType) args[1]).toInt());
+							else
+								throw new RuntimeException("Timeout must be a number");
+						} else {
+							val = future.await();
+						}
+					} else {
+						throw new RuntimeException("Provided non-future argument");
+					}
+				} else {
+					throw new RuntimeException("Must provide at least 1 argument");
+				}
+				
+				return val;
+			}
+		});
+		funcs.put("await_all", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				ArrayType val = new ArrayType();
+				
+				for(FutureType future : futures(args))
+					val.add(future.await());
+				
+				return val;
+			}
+		});
+		funcs.put("await_any", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				FutureType[] futures = futures(args);
+				
+				CompletableFuture<?>[] all = new CompletableFuture<?>[futures.length];
+				for(int i = 0; i < futures.length; i++)
+					all[i] = futures[i].future();
+				
+				// Await whichever finishes first
+				return new FutureType(CompletableFuture.anyOf(all).thenApply(res -> (RtflType) res)).await();
+			}
+		});
 		funcs.put("require", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				if(args.length > 0) {
@@ -199,10 +184,10 @@ public class StandardFunctions {
 								file = new File("libs/"+path+".rtfl");
 						}
 						
-						if(!requiredFiles.contains(file.getAbsolutePath())) {
+						if(!runtime.requiredFiles().contains(file.getAbsolutePath())) {
 							try {
 								runtime.executeFile(file, scope);
-								requiredFiles.add(file.getAbsolutePath());
+								runtime.requiredFiles().add(file.getAbsolutePath());
 							} catch(FileNotFoundException e) {
 								throw new RuntimeException("File/library \""+path+"\" does not exist");
 							} catch (IOException | ProducerException e) {
@@ -216,7 +201,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("inc", new RtflFunction() {
@@ -229,7 +214,7 @@ public class StandardFunctions {
 						if(varVal instanceof DoubleType)
 							scope.assignVar(varName, new DoubleType(((DoubleType) varVal).toDouble()+1));
 						else
-							scope.assignVar(varName, new IntType(((IntType) varVal).toInt()+1));
+							scope.assignVar(varName, IntType.of(((IntType) varVal).toInt()+1));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -237,7 +222,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("dec", new RtflFunction() {
@@ -250,7 +235,7 @@ public class StandardFunctions {
 						if(varVal instanceof DoubleType)
 							scope.assignVar(varName, new DoubleType(((DoubleType) varVal).toDouble()-1));
 						else
-							scope.assignVar(varName, new IntType(((IntType) varVal).toInt()-1));
+							scope.assignVar(varName, IntType.of(((IntType) varVal).toInt()-1));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -258,7 +243,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("equals", new RtflFunction() {
@@ -271,7 +256,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new BoolType(equals);
+				return BoolType.of(equals);
 			}
 		});
 		funcs.put("more_than", new RtflFunction() {
@@ -288,7 +273,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new BoolType(more);
+				return BoolType.of(more);
 			}
 		});
 		funcs.put("less_than", new RtflFunction() {
@@ -305,7 +290,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new BoolType(less);
+				return BoolType.of(less);
 			}
 		});
 		funcs.put("not", new RtflFunction() {
@@ -314,7 +299,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof NumberType) {
-						inverse = new BoolType(!(((NumberType) args[0]).toDouble() > 0));
+						inverse = BoolType.of(!(((NumberType) args[0]).toDouble() > 0));
 					} else {
 						throw new RuntimeException("Provided non-number/bool argument");
 					}
@@ -331,7 +316,7 @@ public class StandardFunctions {
 				
 				if(args.length > 1) {
 					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						val = new BoolType(
+						val = BoolType.of(
 							((NumberType) args[0]).toDouble() > 0
 							&&
 							((NumberType) args[1]).toDouble() > 0
@@ -352,7 +337,7 @@ public class StandardFunctions {
 				
 				if(args.length > 1) {
 					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
-						val = new BoolType(
+						val = BoolType.of(
 							((NumberType) args[0]).toDouble() > 0
 							||
 							((NumberType) args[1]).toDouble() > 0
@@ -372,11 +357,10 @@ public class StandardFunctions {
 				StringBuilder str = null;
 				
 				if(args.length > 1) {
-					String value = args[0].value() == null ? "null" : args[0].value().toString();
-					str = new StringBuilder(value);
+					str = new StringBuilder(String.valueOf(printable(args[0])));
 					
 					for(int i = 1; i < args.length; i++)
-						str.append(args[i].value() == null ? "null" : args[i].value().toString());
+						str.append(printable(args[i]));
 					
 				} else {
 					throw new RuntimeException("Must provide at least 2 arguments");
@@ -394,7 +378,7 @@ public class StandardFunctions {
 						String str = (String) args[0].value();
 						String substr = (String) args[1].value();
 						
-						contains = new BoolType(str.contains(substr));
+						contains = BoolType.of(str.contains(substr));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -426,7 +410,7 @@ public class StandardFunctions {
 		});
 		funcs.put("var", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType varVal = new NullType();
+				RtflType varVal = NullType.INSTANCE;
 				
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
@@ -448,7 +432,7 @@ public class StandardFunctions {
 				StringType val = null;
 				
 				if(args.length > 0) {
-					val = new StringType(args[0].value() == null ? "null" : args[0].value().toString());
+					val = new StringType(String.valueOf(printable(args[0])));
 				} else {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
@@ -507,7 +491,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("file_exists", new RtflFunction() {
@@ -516,7 +500,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
-						val = new BoolType(new File((String) args[0].value()).exists());
+						val = BoolType.of(new File((String) args[0].value()).exists());
 					} else {
 						throw new RuntimeException("Provided non-string path");
 					}
@@ -533,7 +517,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
-						val = new BoolType(new File((String) args[0].value()).isFile());
+						val = BoolType.of(new File((String) args[0].value()).isFile());
 					} else {
 						throw new RuntimeException("Provided non-string path");
 					}
@@ -550,7 +534,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
-						val = new BoolType(new File((String) args[0].value()).isDirectory());
+						val = BoolType.of(new File((String) args[0].value()).isDirectory());
 					} else {
 						throw new RuntimeException("Provided non-string path");
 					}
@@ -582,7 +566,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("list_files", new RtflFunction() {
@@ -592,13 +576,11 @@ public class StandardFunctions {
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
 						File file = new File((String) args[0].value());
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> fileNames = ((ArrayList<RtflType>) files.value());
 						
 						if(file.exists()) {
 							if(file.isDirectory())
 								for(String path : file.list())
-									fileNames.add(new StringType(path));
+									files.add(new StringType(path));
 							else
 								throw new RuntimeException("Path \""+((String) args[0].value())+"\" does not point to a directory");
 						} else {
@@ -628,7 +610,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("move_file", new RtflFunction() {
@@ -644,26 +626,26 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("open_terminal", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				runtime.openTerminal();
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("close_terminal", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				runtime.closeTerminal();
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("terminal_open", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				return new BoolType(runtime.terminalOpen());
+				return BoolType.of(runtime.terminalOpen());
 			}
 		});
 		funcs.put("read_terminal", new RtflFunction() {
@@ -678,7 +660,7 @@ public class StandardFunctions {
 				else
 					System.exit(0);
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("system_property", new RtflFunction() {
@@ -688,7 +670,7 @@ public class StandardFunctions {
 				if(args.length > 0) {
 					if(args[0] instanceof StringType) {
 						String sysProp = System.getProperty((String) args[0].value());
-						prop = sysProp == null ? new NullType() : new StringType(sysProp);
+						prop = sysProp == null ? NullType.INSTANCE : new StringType(sysProp);
 					} else {
 						throw new RuntimeException("Provided non-string property name");
 					}
@@ -708,8 +690,7 @@ public class StandardFunctions {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				if(args.length > 1) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
+						ArrayType arr = (ArrayType) args[0];
 						for(int i = 1; i < args.length; i++)
 							arr.add(args[i]);
 					} else {
@@ -719,7 +700,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("array_contains", new RtflFunction() {
@@ -728,10 +709,9 @@ public class StandardFunctions {
 				
 				if(args.length > 1) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
-						for(RtflType elem : arr) {
-							if(elem.equals(args[1], scope)) {
+						ArrayType arr = (ArrayType) args[0];
+						for(int i = 0; i < arr.length(); i++) {
+							if(arr.get(i).equals(args[1], scope)) {
 								contains = true;
 								break;
 							}
@@ -743,21 +723,20 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new BoolType(contains);
+				return BoolType.of(contains);
 			}
 		});
 		funcs.put("array_remove", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				if(args.length > 1) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
+						ArrayType arr = (ArrayType) args[0];
 						
 						RtflType rem = args[1];
 						if(rem instanceof NumberType) {
 							arr.remove(((NumberType) rem).toInt());
 						} else {
-							for(int i = 0; i < arr.size(); i++)
+							for(int i = 0; i < arr.length(); i++)
 								if(rem.value().equals(arr.get(i).value()))
 									arr.remove(i);
 						}
@@ -768,17 +747,16 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("array_get", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType val = new NullType();
+				RtflType val = NullType.INSTANCE;
 				
 				if(args.length > 1) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
+						ArrayType arr = (ArrayType) args[0];
 						
 						RtflType index = args[1];
 						try {
@@ -787,7 +765,7 @@ public class StandardFunctions {
 							else
 								throw new RuntimeException("Index must be a number");
 						} catch(IndexOutOfBoundsException e) {
-							throw new RuntimeException("Index "+index+" out of bounds (array length is "+arr.size()+')');
+							throw new RuntimeException("Index "+index+" out of bounds (array length is "+arr.length()+')');
 						}
 					} else {
 						throw new RuntimeException("Did not provide array to read");
@@ -803,8 +781,7 @@ public class StandardFunctions {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				if(args.length > 2) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
+						ArrayType arr = (ArrayType) args[0];
 						
 						RtflType index = args[1];
 						try {
@@ -813,7 +790,7 @@ public class StandardFunctions {
 							else
 								throw new RuntimeException("Index must be a number");
 						} catch(IndexOutOfBoundsException e) {
-							throw new RuntimeException("Index "+index+" out of bounds (array length is "+arr.size()+')');
+							throw new RuntimeException("Index "+index+" out of bounds (array length is "+arr.length()+')');
 						}
 					} else {
 						throw new RuntimeException("Did not provide array to set");
@@ -822,7 +799,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 3 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("array_length", new RtflFunction() {
@@ -831,10 +808,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof ArrayType) {
-						@SuppressWarnings("unchecked")
-						ArrayList<RtflType> arr = (ArrayList<RtflType>) ((ArrayType) args[0]).value();
-						
-						len = new IntType(arr.size());
+						len = IntType.of(((ArrayType) args[0]).length());
 					} else {
 						throw new RuntimeException("Did not provide array to measure");
 					}
@@ -845,8 +819,95 @@ public class StandardFunctions {
 				return len;
 			}
 		});
+		funcs.put("parallel_map", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				if(args.length > 1) {
+					if(args[0] instanceof ArrayType) {
+						if(args[1] instanceof StringType) {
+							RtflType[] vals = elements((ArrayType) args[0]);
+							RtflFunction func = scope.function((String) args[1].value());
+							
+							// Each piece writes the results of its own indexes, so they stay in order
+							RtflType[] results = new RtflType[vals.length];
+							parallel(runtime, scope, vals.length, chunkSize(runtime, vals.length), (start, end, scp) -> {
+								for(int i = start; i < end; i++)
+									results[i] = call(func, runtime, scp, vals[i]);
+							});
+							
+							return new ArrayType(results);
+						} else {
+							throw new RuntimeException("Did not provide function name");
+						}
+					} else {
+						throw new RuntimeException("Did not provide array to map");
+					}
+				} else {
+					throw new RuntimeException("Must provide at least 2 arguments");
+				}
+			}
+		});
+		funcs.put("parallel_for", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				if(args.length > 2) {
+					if(args[0] instanceof NumberType && args[1] instanceof NumberType) {
+						if(args[2] instanceof StringType) {
+							int from = ((NumberType) args[0]).toInt();
+							int count = Math.max(0, ((NumberType) args[1]).toInt()-from);
+							RtflFunction func = scope.function((String) args[2].value());
+							
+							parallel(runtime, scope, count, chunkSize(runtime, count), (start, end, scp) -> {
+								for(int i = start; i < end; i++)
+									call(func, runtime, scp, IntType.of(from+i));
+							});
+						} else {
+							throw new RuntimeException("Did not provide function name");
+						}
+					} else {
+						throw new RuntimeException("Provided non-number argument");
+					}
+				} else {
+					throw new RuntimeException("Must provide at least 3 arguments");
+				}
+				
+				return NullType.INSTANCE;
+			}
+		});
+		funcs.put("parallel_reduce", new RtflFunction() {
+			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
+				if(args.length > 2) {
+					if(args[0] instanceof ArrayType) {
+						if(args[1] instanceof StringType) {
+							RtflType[] vals = elements((ArrayType) args[0]);
+							RtflFunction func = scope.function((String) args[1].value());
+							int chunk = chunkSize(runtime, vals.length);
+							
+							// Every piece is reduced on its own, the function must be associative for the pieces to be combined
+							RtflType[] partials = new RtflType[(vals.length+chunk-1)/chunk];
+							parallel(runtime, scope, vals.length, chunk, (start, end, scp) -> {
+								RtflType acc = vals[start];
+								for(int i = start+1; i < end; i++)
+									acc = call(func, runtime, scp, acc, vals[i]);
+								partials[start/chunk] = acc;
+							});
+							
+							// Combine the pieces in order
+							RtflType res = args[2];
+							for(RtflType partial : partials)
+								res = call(func, runtime, scope, res, partial);
+							
+							return res;
+						} else {
+							throw new RuntimeException("Did not provide function name");
+						}
+					} else {
+						throw new RuntimeException("Did not provide array to reduce");
+					}
+				} else {
+					throw new RuntimeException("Must provide at least 3 arguments");
+				}
+			}
+		});
 		funcs.put("split", new RtflFunction() {
-			@SuppressWarnings("unchecked")
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
 				ArrayType parts = new ArrayType();
 				
@@ -857,7 +918,7 @@ public class StandardFunctions {
 						String[] bits = str.split(splitter);
 						
 						for(String bit : bits)
-							((ArrayList<RtflType>) parts.value()).add(new StringType(bit));
+							parts.add(new StringType(bit));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -877,7 +938,7 @@ public class StandardFunctions {
 						String str = (String) args[0].value();
 						String str2 = (String) args[1].value();
 						
-						index = new IntType(str.indexOf(str2));
+						index = IntType.of(str.indexOf(str2));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -897,7 +958,7 @@ public class StandardFunctions {
 						String str = (String) args[0].value();
 						String start = (String) args[1].value();
 						
-						result = new BoolType(str.startsWith(start));
+						result = BoolType.of(str.startsWith(start));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -917,7 +978,7 @@ public class StandardFunctions {
 						String str = (String) args[0].value();
 						String end = (String) args[1].value();
 						
-						result = new BoolType(str.endsWith(end));
+						result = BoolType.of(str.endsWith(end));
 					} else {
 						throw new RuntimeException("Provided non-string argument");
 					}
@@ -1021,7 +1082,7 @@ public class StandardFunctions {
 					if(args[0] instanceof StringType) {
 						String str = (String) args[0].value();
 						
-						len = new IntType(str.length());
+						len = IntType.of(str.length());
 					} else {
 						throw new RuntimeException("Did not provide string to measure");
 					}
@@ -1064,7 +1125,7 @@ public class StandardFunctions {
 					if(args[0] instanceof NumberType)
 						num = (NumberType) args[0];
 					else if(args[0] instanceof BoolType)
-						num = new IntType(((NumberType) args[0]).toInt());
+						num = IntType.of(((NumberType) args[0]).toInt());
 					else if(args[0] instanceof StringType) {
 						String str = (String) args[0].value();
 						
@@ -1072,7 +1133,7 @@ public class StandardFunctions {
 							if(str.contains(".")) {
 								num = new DoubleType(Double.parseDouble(str));
 							} else {
-								num = new IntType(Integer.parseInt(str));
+								num = IntType.of(Integer.parseInt(str));
 							}
 						} catch(NumberFormatException e) {
 							throw new RuntimeException("String \""+str+"\" does not represent a number");
@@ -1176,14 +1237,9 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof MapType) {
-						@SuppressWarnings("unchecked")
-						ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-						
-						ArrayList<RtflType> arr = new ArrayList<RtflType>();
-						for(String key : map.keySet())
-							arr.add(new StringType(key));
-						
-						val = new ArrayType(arr);
+						val = new ArrayType();
+						for(String key : ((MapType) args[0]).keys())
+							val.add(new StringType(key));
 					} else {
 						throw new RuntimeException("Provided non-map argument");
 					}
@@ -1200,14 +1256,7 @@ public class StandardFunctions {
 				
 				if(args.length > 0) {
 					if(args[0] instanceof MapType) {
-						@SuppressWarnings("unchecked")
-						ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-						
-						ArrayList<RtflType> arr = new ArrayList<RtflType>();
-						for(RtflType value : map.values())
-							arr.add(value);
-						
-						val = new ArrayType(arr);
+						val = new ArrayType(((MapType) args[0]).values());
 					} else {
 						throw new RuntimeException("Provided non-map argument");
 					}
@@ -1224,10 +1273,7 @@ public class StandardFunctions {
 				
 				if(args.length > 1) {
 					if(args[0] instanceof MapType) {
-						@SuppressWarnings("unchecked")
-						ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-						
-						contains = map.containsKey((String) args[1].value());
+						contains = ((MapType) args[0]).containsKey((String) args[1].value());
 					} else {
 						throw new RuntimeException("Provided non-map argument");
 					}
@@ -1235,7 +1281,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new BoolType(contains);
+				return BoolType.of(contains);
 			}
 		});
 		funcs.put("map_put", new RtflFunction() {
@@ -1243,10 +1289,7 @@ public class StandardFunctions {
 				if(args.length > 2) {
 					if(args[0] instanceof MapType) {
 						if(args[1] instanceof StringType) {
-							@SuppressWarnings("unchecked")
-							ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-							
-							map.put((String) args[1].value(), args[2]);
+							((MapType) args[0]).put((String) args[1].value(), args[2]);
 						} else {
 							throw new RuntimeException("Key must be a string");
 						}
@@ -1257,21 +1300,18 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 3 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		// Alias to map_put
 		funcs.put("map_set", funcs.get("map_put"));
 		funcs.put("map_get", new RtflFunction() {
 			public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-				RtflType val = new NullType();
+				RtflType val = NullType.INSTANCE;
 				if(args.length > 1) {
 					if(args[0] instanceof MapType) {
 						if(args[1] instanceof StringType) {
-							@SuppressWarnings("unchecked")
-							ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-							
-							RtflType value = map.get((String) args[1].value());
+							RtflType value = ((MapType) args[0]).get((String) args[1].value());
 							if(value != null)
 								val = value;
 						} else {
@@ -1292,10 +1332,7 @@ public class StandardFunctions {
 				if(args.length > 1) {
 					if(args[0] instanceof MapType) {
 						if(args[1] instanceof StringType) {
-							@SuppressWarnings("unchecked")
-							ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) args[0].value();
-							
-							map.remove((String) args[1].value());
+							((MapType) args[0]).remove((String) args[1].value());
 						} else {
 							throw new RuntimeException("Key must be a string");
 						}
@@ -1306,7 +1343,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 2 arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("to_json", new JsonParseFunction(false));
@@ -1327,7 +1364,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("library", new RtflFunction() {
@@ -1348,7 +1385,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least 1 argument");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 		funcs.put("throw", new RtflFunction() {
@@ -1378,7 +1415,7 @@ public class StandardFunctions {
 					throw new RuntimeException("Must provide at least two arguments");
 				}
 				
-				return new NullType();
+				return NullType.INSTANCE;
 			}
 		});
 	}
@@ -1391,6 +1428,136 @@ public class StandardFunctions {
 	public HashMap<String, RtflFunction> functions() {
 		return funcs;
 	}
+	/**
+	 * Returns all standard Rtfl functions, created once and shared by all runtimes that import them.
+	 * The functions keep no state of their own, so they can be used by any number of runtimes at once.
+	 * @return all standard Rtfl functions, in a map that cannot be modified
+	 * @since 1.3
+	 */
+	public static synchronized Map<String, RtflFunction> shared() {
+		if(_shared == null)
+			_shared = Collections.unmodifiableMap(new StandardFunctions().functions());
+		
+		return _shared;
+	}
+	
+	// Returns the Java value to print for a value, arrays and maps are printed without converting their storage
+	private static Object printable(RtflType val) {
+		return val instanceof ArrayType || val instanceof MapType ? val.toString() : val.value();
+	}
+	
+	// Returns the futures passed to a function, either as arguments or as a single array
+	private static FutureType[] futures(RtflType[] args) throws RuntimeException {
+		if(args.length == 0)
+			throw new RuntimeException("Must provide at least 1 argument");
+		
+		RtflType[] vals = args;
+		if(args.length == 1 && args[0] instanceof ArrayType) {
+			ArrayType arr = (ArrayType) args[0];
+			vals = new RtflType[arr.length()];
+			for(int i = 0; i < vals.length; i++)
+				vals[i] = arr.get(i);
+		}
+		
+		FutureType[] futures = new FutureType[vals.length];
+		for(int i = 0; i < vals.length; i++) {
+			if(vals[i] instanceof FutureType)
+				futures[i] = (FutureType) vals[i];
+			else
+				throw new RuntimeException("Provided non-future argument");
+		}
+		
+		return futures;
+	}
+	
+	// Returns the elements of an array, shared so they can be passed to other threads
+	private static RtflType[] elements(ArrayType arr) {
+		arr.share();
+		
+		RtflType[] vals = new RtflType[arr.length()];
+		for(int i = 0; i < vals.length; i++)
+			vals[i] = arr.get(i);
+		
+		return vals;
+	}
+	// Returns the amount of elements to process in one piece of parallel work, about four pieces per thread
+	private static int chunkSize(RtflRuntime runtime, int count) {
+		int pieces = runtime.parallelism()*4;
+		return Math.max(runtime.parallelChunkSize(), (count+pieces-1)/pieces);
+	}
+	// Calls a function in a scope of its own, like a normal function call would
+	private static RtflType call(RtflFunction func, RtflRuntime runtime, Scope scope, RtflType... args) throws RuntimeException {
+		Scope callScope = scope.descend(scope.cause());
+		try {
+			RtflType res = func.run(args, runtime, callScope);
+			return res == null ? NullType.INSTANCE : res;
+		} finally {
+			callScope.release();
+		}
+	}
+	// Splits the indexes from 0 to count into pieces of chunk indexes and runs them on the runtime's parallel pool.
+	// Every piece gets its own copy of the scope, and the first error thrown by a piece is thrown once all of them have stopped.
+	private static void parallel(RtflRuntime runtime, Scope scope, int count, int chunk, ParallelBody body) throws RuntimeException {
+		if(count < 1)
+			return;
+		
+		// Pieces copy a snapshot, so they do not touch the caller's scopes
+		Scope base = scope.snapshot();
+		base.share();
+		
+		AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		runtime.parallelPool().invoke(new ParallelTask(base, 0, count, chunk, body, error));
+		
+		if(error.get() != null)
+			throw error.get();
+	}
+	
+	// A piece of parallel work
+	private interface ParallelBody {
+		public void run(int start, int end, Scope scope) throws RuntimeException;
+	}
+	// Runs a range of indexes, splitting it in half until it fits in a single piece
+	private static class ParallelTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Scope _scope;
+		private final int _start;
+		private final int _end;
+		private final int _chunk;
+		private final ParallelBody _body;
+		private final AtomicReference<RuntimeException> _error;
+		
+		public ParallelTask(Scope scope, int start, int end, int chunk, ParallelBody body, AtomicReference<RuntimeException> error) {
+			_scope = scope;
+			_start = start;
+			_end = end;
+			_chunk = chunk;
+			_body = body;
+			_error = error;
+		}
+		
+		protected void compute() {
+			// Nothing left to do once a piece failed
+			if(_error.get() != null)
+				return;
+			
+			int pieces = (_end-_start+_chunk-1)/_chunk;
+			if(pieces > 1) {
+				// Split on a piece boundary
+				int mid = _start+(pieces/2)*_chunk;
+				invokeAll(
+					new ParallelTask(_scope, _start, mid, _chunk, _body, _error),
+					new ParallelTask(_scope, mid, _end, _chunk, _body, _error)
+				);
+			} else {
+				try {
+					_body.run(_start, _end, _scope.snapshot());
+				} catch(RuntimeException e) {
+					_error.compareAndSet(null, e);
+				}
+			}
+		}
+	}
 	
 	// Standard `eval` function implementation
 	private class EvalFunction implements RtflFunction {
@@ -1403,7 +1570,7 @@ public class StandardFunctions {
 		}
 		
 		public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-			RtflType result = new NullType();
+			RtflType result = NullType.INSTANCE;
 			
 			if(args.length > 0) {
 				if(args[0] instanceof StringType) {
@@ -1412,7 +1579,10 @@ public class StandardFunctions {
 					if(_fromFile) {
 						String path = (String) ((StringType) args[0]).value();
 						try {
-							runtime.executeFile(new File(path), scope);
+							if(_async)
+								result = runtime.submitAsync(runtime.readFile(new File(path), scope), scope);
+							else
+								runtime.executeFile(new File(path), scope);
 						} catch(FileNotFoundException e) {
 							throw new RuntimeException("File \""+path+"\" does not exist");
 						} catch (IOException | ProducerException e) {
@@ -1427,11 +1597,16 @@ public class StandardFunctions {
 						CacheInstructionConsumer cons = new CacheInstructionConsumer();
 						try {
 							// Generate instructions from source
+							long parseStart = System.nanoTime();
 							SourcecodeInstructionProducer.produce(_fromFile ? new File((String) args[0].value()).getName() : "eval", in, cons);
 							
+							RuntimeMetrics metrics = runtime.metrics();
+							if(metrics != null)
+								metrics.parsed(System.nanoTime()-parseStart);
+							
 							// Fetch and execute instructions
 							if(_async)
-								runtime.executeAsync(cons.cache.toArray(new RtflInstruction[0]), scope);
+								result = runtime.submitAsync(cons.cache.toArray(new RtflInstruction[0]), scope);
 							else
 								result = runtime.execute(cons.cache.toArray(new RtflInstruction[0]), scope);
 						} catch (IOException | ProducerException | RuntimeException e) {
@@ -1460,34 +1635,35 @@ public class StandardFunctions {
 			_toMap = toMap;
 		}
 		
-		@SuppressWarnings("unchecked")
 		private JSONArray arrayToJson(ArrayType arrayType) {
 			JSONArray arr = new JSONArray();
 			
-			for(RtflType val : (ArrayList<RtflType>) arrayType.value())
+			for(int i = 0; i < arrayType.length(); i++) {
+				RtflType val = arrayType.get(i);
 				if(val instanceof MapType)
 					arr.put(mapToJson((MapType) val));
 				else if(val instanceof ArrayType)
 					arr.put(arrayToJson((ArrayType) val));
 				else
 					arr.put(val.value());
+			}
 			
 			return arr;
 		}
 		private JSONObject mapToJson(MapType mapType) {
 			JSONObject json = new JSONObject();
-			@SuppressWarnings("unchecked")
-			ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) mapType.value();
 			
 			// Loop through entries
-			for(Entry<String, RtflType> entry : map.entrySet()) {
+			for(String key : mapType.keys()) {
+				RtflType val = mapType.get(key);
+				
 				// Process container types (array, map, etc)
-				if(entry.getValue() instanceof MapType)
-					json.put(entry.getKey(), mapToJson((MapType) entry.getValue()));
-				else if(entry.getValue() instanceof ArrayType)
-					json.put(entry.getKey(), arrayToJson((ArrayType) entry.getValue()));
+				if(val instanceof MapType)
+					json.put(key, mapToJson((MapType) val));
+				else if(val instanceof ArrayType)
+					json.put(key, arrayToJson((ArrayType) val));
 				else
-					json.put(entry.getKey(), entry.getValue().value());
+					json.put(key, val.value());
 			}
 			
 			return json;
@@ -1500,17 +1676,17 @@ public class StandardFunctions {
 			if(json instanceof ArrayList<?>)
 				val = new ArrayType(jsonToArray((ArrayList<Object>) json));
 			else if(json instanceof Boolean)
-				val = new BoolType((Boolean) json);
+				val = BoolType.of((Boolean) json);
 			else if(json instanceof Double)
 				val = new DoubleType((Double) json);
 			else if(json instanceof Integer)
-				val = new IntType((Integer) json);
+				val = IntType.of((Integer) json);
 			else if(json instanceof Map<?, ?>)
 				val = new MapType(jsonToMap((Map<String, Object>) json));
 			else if(json instanceof String)
 				val = new StringType((String) json);
 			else
-				val = new NullType();
+				val = NullType.INSTANCE;
 			
 			return val;
 		}
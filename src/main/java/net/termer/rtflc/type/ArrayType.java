@@ -1,42 +1,233 @@
 package net.termer.rtflc.type;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import net.termer.rtflc.runtime.RuntimeException;
 import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.assignment.AssignmentType;
 
 public class ArrayType implements RtflType {
-	private ArrayList<RtflType> arr = new ArrayList<RtflType>();
+	// Storage layouts, arrays holding only ints, doubles or bools store them as primitives
+	private static final int EMPTY = 0;
+	private static final int INT = 1;
+	private static final int DOUBLE = 2;
+	private static final int BOOL = 3;
+	private static final int GENERIC = 4;
+	
+	private int layout = EMPTY;
+	private int size = 0;
+	private int[] ints = null;
+	private double[] doubles = null;
+	private boolean[] bools = null;
+	private ArrayList<RtflType> arr = null;
+	// Whether this array is reachable from multiple threads, shared arrays stay in the generic layout
+	private volatile boolean shared = false;
 	
 	public ArrayType() {
 		// Nothing to do :DDDDD
 	}
 	public ArrayType(RtflType[] vals) {
 		for(RtflType val : vals)
-			arr.add(val);
+			add(val);
 	}
 	public ArrayType(ArrayList<RtflType> vals) {
-		arr.addAll(vals);
+		for(RtflType val : vals)
+			add(val);
 	}
 	
 	public String name() {
 		return "ARRAY";
 	}
+	/**
+	 * Returns the elements of this array as an ArrayList that can be modified directly.
+	 * Arrays stored as primitives are converted to the generic layout first, so prefer length(), get(), set(), add() and remove() where possible.
+	 * @return The ArrayList holding this array's elements
+	 * @since 1.0
+	 */
 	public Object value() {
+		generalize();
 		return arr;
 	}
+	
+	/**
+	 * Returns the number of elements in this array
+	 * @return The length of this array
+	 * @since 1.3
+	 */
+	public int length() {
+		return layout == GENERIC ? arr.size() : size;
+	}
+	/**
+	 * Returns the element at the specified index
+	 * @param index The index
+	 * @return The element
+	 * @throws IndexOutOfBoundsException If the index is out of bounds
+	 * @since 1.3
+	 */
+	public RtflType get(int index) {
+		if(layout == GENERIC)
+			return arr.get(index);
+		
+		checkIndex(index);
+		switch(layout) {
+		case INT:
+			return IntType.of(ints[index]);
+		case DOUBLE:
+			return new DoubleType(doubles[index]);
+		default:
+			return BoolType.of(bools[index]);
+		}
+	}
+	/**
+	 * Replaces the element at the specified index
+	 * @param index The index
+	 * @param val The new element
+	 * @throws IndexOutOfBoundsException If the index is out of bounds
+	 * @since 1.3
+	 */
+	public void set(int index, RtflType val) {
+		if(layout != GENERIC) {
+			checkIndex(index);
+			
+			if(layout == INT && val instanceof IntType) {
+				ints[index] = ((IntType) val).toInt();
+				return;
+			} else if(layout == DOUBLE && val instanceof DoubleType) {
+				doubles[index] = ((DoubleType) val).toDouble();
+				return;
+			} else if(layout == BOOL && val instanceof BoolType) {
+				bools[index] = ((BoolType) val).toInt() > 0;
+				return;
+			}
+			
+			generalize();
+		}
+		
+		if(shared)
+			RtflType.share(val);
+		arr.set(index, val);
+	}
+	/**
+	 * Adds an element to the end of this array
+	 * @param val The element to add
+	 * @since 1.3
+	 */
+	public void add(RtflType val) {
+		if(layout == EMPTY) {
+			// Pick a layout based on the first element
+			if(val instanceof IntType) {
+				layout = INT;
+				ints = new int[10];
+			} else if(val instanceof DoubleType) {
+				layout = DOUBLE;
+				doubles = new double[10];
+			} else if(val instanceof BoolType) {
+				layout = BOOL;
+				bools = new boolean[10];
+			} else {
+				layout = GENERIC;
+				arr = new ArrayList<RtflType>();
+			}
+		}
+		
+		if(layout == INT && val instanceof IntType) {
+			if(size == ints.length)
+				ints = Arrays.copyOf(ints, size*2);
+			ints[size++] = ((IntType) val).toInt();
+		} else if(layout == DOUBLE && val instanceof DoubleType) {
+			if(size == doubles.length)
+				doubles = Arrays.copyOf(doubles, size*2);
+			doubles[size++] = ((DoubleType) val).toDouble();
+		} else if(layout == BOOL && val instanceof BoolType) {
+			if(size == bools.length)
+				bools = Arrays.copyOf(bools, size*2);
+			bools[size++] = ((BoolType) val).toInt() > 0;
+		} else {
+			generalize();
+			if(shared)
+				RtflType.share(val);
+			arr.add(val);
+		}
+	}
+	/**
+	 * Removes the element at the specified index
+	 * @param index The index
+	 * @return The removed element
+	 * @throws IndexOutOfBoundsException If the index is out of bounds
+	 * @since 1.3
+	 */
+	public RtflType remove(int index) {
+		if(layout == GENERIC)
+			return arr.remove(index);
+		
+		RtflType removed = get(index);
+		int moved = size-index-1;
+		switch(layout) {
+		case INT:
+			System.arraycopy(ints, index+1, ints, index, moved);
+			break;
+		case DOUBLE:
+			System.arraycopy(doubles, index+1, doubles, index, moved);
+			break;
+		default:
+			System.arraycopy(bools, index+1, bools, index, moved);
+		}
+		size--;
+		
+		return removed;
+	}
+	
+	/**
+	 * Marks this array as reachable from multiple threads, sharing all values it contains and values added to it later.
+	 * Shared arrays always use the generic layout, so other threads never see the array switch layouts.
+	 * Must be called by the thread that owns the array before another thread can reach it.
+	 * @since 1.3
+	 */
+	public void share() {
+		if(shared)
+			return;
+		
+		// Switching layouts empties the primitive storage, which threads reading it concurrently would see
+		generalize();
+		for(RtflType val : arr)
+			RtflType.share(val);
+		shared = true;
+	}
+	
+	// Throws an IndexOutOfBoundsException if the index is out of bounds for a primitive layout
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+	}
+	// Moves all elements into the generic layout, which can hold values of any type
+	private void generalize() {
+		if(layout == GENERIC)
+			return;
+		
+		ArrayList<RtflType> list = new ArrayList<RtflType>(Math.max(size, 10));
+		for(int i = 0; i < size; i++)
+			list.add(get(i));
+		
+		arr = list;
+		layout = GENERIC;
+		size = 0;
+		ints = null;
+		doubles = null;
+		bools = null;
+	}
+	
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		boolean eq = false;
 		
 		RtflType val = resolveVal(value, scope);
 		if(val instanceof ArrayType) {
 			ArrayType varr = (ArrayType) val;
-			if(varr.arr.size() == arr.size() ) {
+			if(varr.length() == length()) {
 				// Compare elements of both arrays
-				for(int i = 0; i < arr.size(); i++) {
-					if(varr.arr.get(i).equals(arr.get(i), scope)) {
-						eq = true; 
+				for(int i = 0; i < length(); i++) {
+					if(varr.get(i).equals(get(i), scope)) {
+						eq = true;
 					} else {
 						eq = false;
 						break;
@@ -52,6 +243,17 @@ public class ArrayType implements RtflType {
 	}
 	
 	public String toString() {
-		return arr.toString();
+		if(layout == GENERIC)
+			return arr.toString();
+		
+		// Same format as ArrayList.toString()
+		StringBuilder sb = new StringBuilder("[");
+		for(int i = 0; i < size; i++) {
+			if(i > 0)
+				sb.append(", ");
+			sb.append(get(i));
+		}
+		
+		return sb.append(']').toString();
 	}
 }
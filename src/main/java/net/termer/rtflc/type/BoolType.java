@@ -5,11 +5,25 @@ import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.assignment.AssignmentType;
 
 public class BoolType implements NumberType {
-	private boolean val = false;
+	// Shared instances, booleans are immutable
+	public static final BoolType TRUE = new BoolType(true);
+	public static final BoolType FALSE = new BoolType(false);
+	
+	private final boolean val;
 	public BoolType(boolean bool) {
 		val = bool;
 	}
 	
+	/**
+	 * Returns the shared instance for the value
+	 * @param bool The value
+	 * @return BoolType.TRUE or BoolType.FALSE
+	 * @since 1.3
+	 */
+	public static BoolType of(boolean bool) {
+		return bool ? TRUE : FALSE;
+	}
+	
 	public String name() {
 		return "BOOL";
 	}
@@ -0,0 +1,111 @@
+package net.termer.rtflc.type;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.termer.rtflc.runtime.RuntimeException;
+import net.termer.rtflc.runtime.Scope;
+import net.termer.rtflc.type.assignment.AssignmentType;
+
+/**
+ * Handle to the result of code running asynchronously, returned by `async` blocks with a variable name and the `async` and `load_async` functions
+ * @author termer
+ * @since 1.3
+ */
+public class FutureType implements RtflType {
+	private final CompletableFuture<RtflType> _future;
+	
+	public FutureType(CompletableFuture<RtflType> future) {
+		_future = future;
+	}
+	
+	public String name() {
+		return "FUTURE";
+	}
+	/**
+	 * Returns the CompletableFuture that completes with the result
+	 * @return The CompletableFuture behind this handle
+	 * @since 1.3
+	 */
+	public Object value() {
+		return _future;
+	}
+	/**
+	 * Returns the CompletableFuture that completes with the result
+	 * @return The CompletableFuture behind this handle
+	 * @since 1.3
+	 */
+	public CompletableFuture<RtflType> future() {
+		return _future;
+	}
+	
+	/**
+	 * Waits for the result
+	 * @return The result, a NullType if nothing was returned
+	 * @throws RuntimeException If the code failed or waiting was interrupted
+	 * @since 1.3
+	 */
+	public RtflType await() throws RuntimeException {
+		try {
+			return _future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while awaiting result");
+		} catch(ExecutionException e) {
+			throw failure(e);
+		} catch(CancellationException e) {
+			throw new RuntimeException("Async execution was cancelled");
+		}
+	}
+	/**
+	 * Waits for the result, up to the specified amount of time
+	 * @param timeout The maximum amount of time to wait, in milliseconds
+	 * @return The result, a NullType if nothing was returned
+	 * @throws RuntimeException If the code failed, waiting was interrupted or the result was not ready in time
+	 * @since 1.3
+	 */
+	public RtflType await(long timeout) throws RuntimeException {
+		try {
+			return _future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while awaiting result");
+		} catch(ExecutionException e) {
+			throw failure(e);
+		} catch(CancellationException e) {
+			throw new RuntimeException("Async execution was cancelled");
+		} catch(TimeoutException e) {
+			throw new RuntimeException("Timed out after "+timeout+"ms while awaiting result");
+		}
+	}
+	/**
+	 * Returns whether the result is ready, or the code failed
+	 * @return Whether the code finished
+	 * @since 1.3
+	 */
+	public boolean done() {
+		return _future.isDone();
+	}
+	
+	// Converts the reason an execution failed into a RuntimeException
+	private static RuntimeException failure(ExecutionException e) {
+		Throwable cause = e.getCause();
+		
+		if(cause instanceof RuntimeException)
+			return new RuntimeException(cause.getMessage());
+		else
+			return new RuntimeException("Async execution failed: "+cause);
+	}
+	
+	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
+		RtflType val = value instanceof AssignmentType ? ((AssignmentType) value).extractValue(scope) : value;
+		return val instanceof FutureType && ((FutureType) val)._future == _future;
+	}
+	
+	public String toString() {
+		return _future.isDone() ? "FUTURE (done)" : "FUTURE (pending)";
+	}
+}
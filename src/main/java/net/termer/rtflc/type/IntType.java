@@ -5,12 +5,51 @@ import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.assignment.AssignmentType;
 
 public class IntType implements NumberType {
-	private int val = 0;
+	// Shared instances for a range of small values, ints are immutable
+	private static volatile Cache _cache = new Cache(-128, 1024);
+	// The most values cacheRange() allows to be cached
+	private static final int MAX_CACHED = 1 << 20;
+	
+	private final int val;
 	
 	public IntType(int integer) {
 		val = integer;
 	}
 	
+	/**
+	 * Returns a shared instance for the value if it is in the cached range, otherwise a new IntType
+	 * @param integer The value
+	 * @return An IntType with the value
+	 * @since 1.3
+	 */
+	public static IntType of(int integer) {
+		Cache cache = _cache;
+		long index = (long) integer - cache.low;
+		
+		if(index >= 0 && index < cache.values.length)
+			return cache.values[(int) index];
+		else
+			return new IntType(integer);
+	}
+	/**
+	 * Sets the range of values that IntType.of() returns shared instances for.
+	 * At most 1048576 values can be cached.
+	 * @param low The lowest cached value
+	 * @param high The highest cached value
+	 * @throws IllegalArgumentException If the high end is lower than the low end, or the range is too large
+	 * @since 1.3
+	 */
+	public static void cacheRange(int low, int high) {
+		if(high < low)
+			throw new IllegalArgumentException("High end of the range must not be lower than its low end");
+		
+		long size = (long) high-low+1;
+		if(size > MAX_CACHED)
+			throw new IllegalArgumentException("Cannot cache "+size+" values, the maximum is "+MAX_CACHED);
+		
+		_cache = new Cache(low, high);
+	}
+	
 	public String name() {
 		return "INT";
 	}
@@ -27,7 +66,7 @@ public class IntType implements NumberType {
 	public double toDouble() {
 		return (double) val;
 	}
-
+	
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		boolean eq = false;
 		
@@ -38,4 +77,17 @@ public class IntType implements NumberType {
 		
 		return eq;
 	}
+	
+	// Instances for a range of values, replaced as a whole when the range changes
+	private static class Cache {
+		final int low;
+		final IntType[] values;
+		
+		Cache(int lowest, int highest) {
+			low = lowest;
+			values = new IntType[highest-lowest+1];
+			for(int i = 0; i < values.length; i++)
+				values[i] = new IntType(lowest+i);
+		}
+	}
 }
@@ -1,32 +1,300 @@
 package net.termer.rtflc.type;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.termer.rtflc.runtime.RuntimeException;
 import net.termer.rtflc.runtime.Scope;
 
 public class MapType implements RtflType {
-	private ConcurrentHashMap<String, RtflType> _map = new ConcurrentHashMap<String, RtflType>();
+	// Maps start out owned by the thread that created them, with their entries in insertion order and an open-addressed index of them.
+	// Once a map becomes reachable from other threads, its entries are copied into a ConcurrentHashMap.
+	// Changes to the unshared entries and the copy are made while holding the map's monitor, so no change is lost to a promotion on another thread.
+	// The unshared entries are never changed again after the copy, so reads racing with a promotion still see a consistent map.
+	private String[] _keys = null;
+	private RtflType[] _vals = null;
+	// Entry index + 1 for each slot, 0 for empty slots
+	private int[] _index = null;
+	private int _size = 0;
+	private volatile ConcurrentHashMap<String, RtflType> _map = null;
 	
 	public MapType() {
 		// No arguments
 	}
 	public MapType(Map<String, RtflType> map) {
-		_map.putAll(map);
+		for(Entry<String, RtflType> entry : map.entrySet())
+			put(entry.getKey(), entry.getValue());
 	}
 	
 	public String name() {
 		return "MAP";
 	}
+	/**
+	 * Returns the ConcurrentHashMap holding this map's entries, which can be modified directly.
+	 * Maps that are not shared yet are shared first, so prefer get(), put(), remove() and keys() where possible.
+	 * @return The ConcurrentHashMap holding this map's entries
+	 * @since 1.0
+	 */
 	public Object value() {
+		share();
 		return _map;
 	}
+	
+	/**
+	 * Returns the value of the specified key
+	 * @param key The key
+	 * @return The value, or null if the key is not in this map
+	 * @since 1.3
+	 */
+	public RtflType get(String key) {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map != null)
+			return map.get(key);
+		if(_size == 0)
+			return null;
+		
+		int entry = _index[slot(key)];
+		return entry == 0 ? null : _vals[entry-1];
+	}
+	/**
+	 * Returns whether the specified key is in this map
+	 * @param key The key
+	 * @return Whether this map contains the key
+	 * @since 1.3
+	 */
+	public boolean containsKey(String key) {
+		return get(key) != null;
+	}
+	/**
+	 * Sets the value of the specified key
+	 * @param key The key
+	 * @param val The value
+	 * @since 1.3
+	 */
+	public void put(String key, RtflType val) {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map == null) {
+			synchronized(this) {
+				if(_map == null) {
+					putUnshared(key, val);
+					return;
+				}
+			}
+			map = _map;
+		}
+		
+		// Values put in a shared map become reachable from other threads
+		RtflType.share(val);
+		map.put(key, val);
+	}
+	/**
+	 * Removes the specified key from this map
+	 * @param key The key
+	 * @return The value the key had, or null if it was not in this map
+	 * @since 1.3
+	 */
+	public RtflType remove(String key) {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map == null) {
+			synchronized(this) {
+				if(_map == null)
+					return removeUnshared(key);
+			}
+			map = _map;
+		}
+		
+		return map.remove(key);
+	}
+	
+	// Sets the value of a key while this map is not shared, must hold the monitor
+	private void putUnshared(String key, RtflType val) {
+		if(_index == null) {
+			_index = new int[8];
+			_keys = new String[4];
+			_vals = new RtflType[4];
+		}
+		
+		int slot = slot(key);
+		if(_index[slot] != 0) {
+			_vals[_index[slot]-1] = val;
+			return;
+		}
+		
+		// Keep the index at most half full
+		if(_size == _keys.length) {
+			grow();
+			slot = slot(key);
+		}
+		
+		_keys[_size] = key;
+		_vals[_size] = val;
+		_index[slot] = ++_size;
+	}
+	// Removes a key while this map is not shared, must hold the monitor
+	private RtflType removeUnshared(String key) {
+		if(_size == 0)
+			return null;
+		
+		int slot = slot(key);
+		if(_index[slot] == 0)
+			return null;
+		
+		int entry = _index[slot]-1;
+		RtflType removed = _vals[entry];
+		unindex(slot);
+		
+		// Fill the gap with the last entry
+		int last = _size-1;
+		if(entry != last) {
+			_index[slot(_keys[last])] = entry+1;
+			_keys[entry] = _keys[last];
+			_vals[entry] = _vals[last];
+		}
+		_keys[last] = null;
+		_vals[last] = null;
+		_size--;
+		
+		return removed;
+	}
+	/**
+	 * Returns the number of entries in this map
+	 * @return The size of this map
+	 * @since 1.3
+	 */
+	public int size() {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		return map == null ? _size : map.size();
+	}
+	/**
+	 * Returns all keys in this map
+	 * @return The keys
+	 * @since 1.3
+	 */
+	public ArrayList<String> keys() {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map != null)
+			return new ArrayList<String>(map.keySet());
+		
+		ArrayList<String> keys = new ArrayList<String>(_size);
+		for(int i = 0; i < _size; i++)
+			keys.add(_keys[i]);
+		
+		return keys;
+	}
+	/**
+	 * Returns all values in this map
+	 * @return The values
+	 * @since 1.3
+	 */
+	public ArrayList<RtflType> values() {
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map != null)
+			return new ArrayList<RtflType>(map.values());
+		
+		ArrayList<RtflType> vals = new ArrayList<RtflType>(_size);
+		for(int i = 0; i < _size; i++)
+			vals.add(_vals[i]);
+		
+		return vals;
+	}
+	
+	/**
+	 * Makes this map safe to use from multiple threads by moving its entries into a ConcurrentHashMap.
+	 * All values in the map, and values put in it later, are shared as well.
+	 * Called by the runtime when a map becomes reachable from an async block or a global variable.
+	 * @since 1.3
+	 */
+	public void share() {
+		if(_map != null)
+			return;
+		
+		ConcurrentHashMap<String, RtflType> map;
+		synchronized(this) {
+			if(_map != null)
+				return;
+			
+			map = new ConcurrentHashMap<String, RtflType>(Math.max(16, _size*2));
+			for(int i = 0; i < _size; i++)
+				map.put(_keys[i], _vals[i]);
+			
+			_map = map;
+		}
+		
+		// Shared after the map is published, so maps that contain themselves do not recurse forever
+		for(RtflType val : map.values())
+			RtflType.share(val);
+	}
+	/**
+	 * Returns whether this map has been shared
+	 * @return Whether this map is safe to use from multiple threads
+	 * @since 1.3
+	 */
+	public boolean shared() {
+		return _map != null;
+	}
+	
+	// Returns the slot of the key in the index, or the empty slot it would be put in
+	private int slot(String key) {
+		int mask = _index.length-1;
+		int slot = hash(key) & mask;
+		
+		while(_index[slot] != 0 && !_keys[_index[slot]-1].equals(key))
+			slot = (slot+1) & mask;
+		
+		return slot;
+	}
+	// Empties a slot of the index, moving back entries that were displaced past it
+	private void unindex(int slot) {
+		int mask = _index.length-1;
+		int gap = slot;
+		_index[gap] = 0;
+		
+		for(int i = (gap+1) & mask; _index[i] != 0; i = (i+1) & mask) {
+			int home = hash(_keys[_index[i]-1]) & mask;
+			
+			// Entries whose home slot lies cyclically between the gap and their slot stay where they are
+			if(gap <= i ? (gap < home && home <= i) : (gap < home || home <= i))
+				continue;
+			
+			_index[gap] = _index[i];
+			_index[i] = 0;
+			gap = i;
+		}
+	}
+	// Doubles the capacity of the entries and the index
+	private void grow() {
+		_keys = Arrays.copyOf(_keys, _keys.length*2);
+		_vals = Arrays.copyOf(_vals, _vals.length*2);
+		_index = new int[_index.length*2];
+		
+		for(int i = 0; i < _size; i++)
+			_index[slot(_keys[i])] = i+1;
+	}
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		return false;
 	}
 	
 	public String toString() {
-		return _map.toString();
+		ConcurrentHashMap<String, RtflType> map = _map;
+		if(map != null)
+			return map.toString();
+		
+		// Same format as ConcurrentHashMap.toString()
+		StringBuilder sb = new StringBuilder("{");
+		for(int i = 0; i < _size; i++) {
+			if(i > 0)
+				sb.append(", ");
+			sb.append(_keys[i]).append('=').append(_vals[i]);
+		}
+		
+		return sb.append('}').toString();
 	}
 }
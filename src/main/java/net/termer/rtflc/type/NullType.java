@@ -5,6 +5,9 @@ import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.assignment.AssignmentType;
 
 public class NullType implements RtflType {
+	// Shared instance, null values carry no state
+	public static final NullType INSTANCE = new NullType();
+	
 	public String name() {
 		return "NULL";
 	}
@@ -38,6 +38,18 @@ public interface RtflType {
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException;
 	
 	/** Static utility methods **/
+	/**
+	 * Prepares a value to be reachable from multiple threads.
+	 * Maps are moved into concurrent storage, and maps and arrays share all values they contain.
+	 * @param value The value to share
+	 * @since 1.3
+	 */
+	public static void share(RtflType value) {
+		if(value instanceof MapType)
+			((MapType) value).share();
+		else if(value instanceof ArrayType)
+			((ArrayType) value).share();
+	}
 	/**
 	 * Converts the provided Java type of an RtflType object
 	 * @param javaType The Java object to convert to an RtflType object
@@ -45,12 +57,12 @@ public interface RtflType {
 	 * @since 1.0
 	 */
 	public static RtflType fromJavaType(Object javaType) {
-		RtflType val = new NullType();
+		RtflType val = NullType.INSTANCE;
 		
 		if(javaType instanceof Boolean) {
-			val = new BoolType((boolean) javaType);
+			val = BoolType.of((boolean) javaType);
 		} else if(javaType instanceof Integer) {
-			val = new IntType((int) javaType);
+			val = IntType.of((int) javaType);
 		} else if(javaType instanceof Double) {
 			val = new DoubleType((double) javaType);
 		} else if(javaType instanceof String) {
@@ -89,19 +101,19 @@ public interface RtflType {
 		Object java = null;
 		
 		if(rtflType instanceof ArrayType) {
-			ArrayList<RtflType> rtflArr = (ArrayList<RtflType>) rtflType.value();
-			ArrayList<Object> arr = new ArrayList<Object>();
+			ArrayType rtflArr = (ArrayType) rtflType;
+			Object[] arr = new Object[rtflArr.length()];
 			
-			for(RtflType rt : rtflArr)
-				arr.add(toJavaType(rt));
+			for(int i = 0; i < arr.length; i++)
+				arr[i] = toJavaType(rtflArr.get(i));
 			
-			java = arr.toArray();
+			java = arr;
 		} else if(rtflType instanceof MapType) {
-			Map<String, RtflType> map = (Map<String, RtflType>) rtflType.value();
+			MapType map = (MapType) rtflType;
 			HashMap<String, Object> javaMap = new HashMap<String, Object>();
 			
-			for(Entry<String, RtflType> entry : map.entrySet())
-				javaMap.put(entry.getKey(), toJavaType(entry.getValue()));
+			for(String key : map.keys())
+				javaMap.put(key, toJavaType(map.get(key)));
 			
 			java = javaMap;
 		} else {
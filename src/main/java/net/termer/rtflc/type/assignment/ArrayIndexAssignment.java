@@ -1,7 +1,5 @@
 package net.termer.rtflc.type.assignment;
 
-import java.util.ArrayList;
-
 import net.termer.rtflc.runtime.RuntimeException;
 import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.ArrayType;
@@ -34,7 +32,7 @@ public class ArrayIndexAssignment implements AssignmentType {
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		return extractValue(scope).equals(value);
 	}
-
+	
 	public RtflType extractValue(Scope scope) throws RuntimeException {
 		RtflType arr = _array instanceof AssignmentType ? ((AssignmentType) _array).extractValue(scope) : _array;
 		RtflType idx = _index instanceof AssignmentType ? ((AssignmentType) _index).extractValue(scope) : _index;
@@ -43,12 +41,10 @@ public class ArrayIndexAssignment implements AssignmentType {
 		
 		if(arr instanceof ArrayType) {
 			if(idx instanceof NumberType) {
-				@SuppressWarnings("unchecked")
-				ArrayList<RtflType> array = (ArrayList<RtflType>) arr.value();
 				NumberType index = (NumberType) idx;
 				
 				try {
-					res = array.get(index.toInt());
+					res = ((ArrayType) arr).get(index.toInt());
 				} catch(IndexOutOfBoundsException e) {
 					throw new RuntimeException("Index "+index.toInt()+" is out of bounds");
 				}
@@ -2,15 +2,21 @@ package net.termer.rtflc.type.assignment;
 
 import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.RtflType;
+import net.termer.rtflc.runtime.ArithmeticFunction;
+import net.termer.rtflc.runtime.CallSite;
+import net.termer.rtflc.runtime.ExecutionListener;
+import net.termer.rtflc.runtime.RtflFunction;
 import net.termer.rtflc.runtime.RuntimeException;
 
 public class FunctionCallAssignment implements AssignmentType {
 	private String funcName = null;
 	private RtflType[] funcArgs = null;
+	private CallSite site = null;
 	
 	public FunctionCallAssignment(String name, RtflType[] args) {
 		funcName = name;
 		funcArgs = args;
+		site = new CallSite(funcName);
 	}
 	
 	public String name() {
@@ -46,6 +52,18 @@ public class FunctionCallAssignment implements AssignmentType {
 	public RtflType extractValue(Scope scope) throws RuntimeException {
 		RtflType val = null;
 		
+		if(funcArgs.length == 2) {
+			RtflType left = funcArgs[0] instanceof AssignmentType ? ((AssignmentType) funcArgs[0]).extractValue(scope) : funcArgs[0];
+			RtflType right = funcArgs[1] instanceof AssignmentType ? ((AssignmentType) funcArgs[1]).extractValue(scope) : funcArgs[1];
+			RtflFunction func = site.function(scope);
+			
+			// Apply arithmetic directly as long as the function has not been replaced and no listener expects the call
+			if(func instanceof ArithmeticFunction && scope.listener() == null)
+				return ((ArithmeticFunction) func).apply(left, right);
+			
+			return call(func, new RtflType[] { left, right }, scope);
+		}
+		
 		RtflType[] args = new RtflType[funcArgs.length];
 		for(int i = 0; i < funcArgs.length; i++) {
 			if(funcArgs[i] instanceof AssignmentType) {
@@ -54,8 +72,25 @@ public class FunctionCallAssignment implements AssignmentType {
 				args[i] = funcArgs[i];
 			}
 		}
-		val = scope.function(funcName).run(args, scope.runtime(), scope.descend(null));
+		val = call(site.function(scope), args, scope);
 		
 		return val;
 	}
-}
+	
+	// Calls the function in a new scope
+	private RtflType call(RtflFunction func, RtflType[] args, Scope scope) throws RuntimeException {
+		Scope callScope = scope.descend(null);
+		try {
+			ExecutionListener listener = scope.listener();
+			if(listener == null)
+				return func.run(args, scope.runtime(), callScope);
+			
+			listener.functionCall(funcName, func, args, callScope);
+			RtflType res = func.run(args, scope.runtime(), callScope);
+			listener.functionReturn(funcName, func, res, callScope);
+			return res;
+		} finally {
+			callScope.release();
+		}
+	}
+}
\ No newline at end of file
@@ -83,6 +83,6 @@ public class LogicAssignment implements AssignmentType {
 			val = false;
 		}
 		
-		return inverse ? new BoolType(!val) : new BoolType(val);
+		return inverse ? BoolType.of(!val) : BoolType.of(val);
 	}
 }
@@ -1,7 +1,5 @@
 package net.termer.rtflc.type.assignment;
 
-import java.util.concurrent.ConcurrentHashMap;
-
 import net.termer.rtflc.runtime.RuntimeException;
 import net.termer.rtflc.runtime.Scope;
 import net.termer.rtflc.type.MapType;
@@ -34,17 +32,14 @@ public class MapFieldAssignment implements AssignmentType {
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		return extractValue(scope).equals(value);
 	}
-
+	
 	public RtflType extractValue(Scope scope) throws RuntimeException {
 		RtflType mp = _map instanceof AssignmentType ? ((AssignmentType) _map).extractValue(scope) : _map;
 		RtflType res = null;
 		
 		if(mp instanceof MapType) {
-				@SuppressWarnings("unchecked")
-				ConcurrentHashMap<String, RtflType> map = (ConcurrentHashMap<String, RtflType>) mp.value();
-				
-				res = map.get(_field);
-				res = res == null ? new NullType() : res;
+				res = ((MapType) mp).get(_field);
+				res = res == null ? NullType.INSTANCE : res;
 		} else {
 			throw new RuntimeException("Cannot get field of non-map value");
 		}
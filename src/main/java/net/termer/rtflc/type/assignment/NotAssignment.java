@@ -27,7 +27,7 @@ public class NotAssignment implements AssignmentType {
 	public boolean equals(RtflType value, Scope scope) throws RuntimeException {
 		return extractValue(scope).equals(value);
 	}
-
+	
 	public RtflType extractValue(Scope scope) throws RuntimeException {
 		RtflType result = val;
 		
@@ -36,9 +36,9 @@ public class NotAssignment implements AssignmentType {
 			result = ((AssignmentType) result).extractValue(scope);
 		
 		if(result instanceof NumberType)
-			return new BoolType(!(((NumberType) result).toDouble() > 0));
+			return BoolType.of(!(((NumberType) result).toDouble() > 0));
 		else
-			return new BoolType(true);
+			return BoolType.TRUE;
 	}
 
 }
@@ -6,9 +6,22 @@ import net.termer.rtflc.type.RtflType;
 
 public class VarRefAssignment implements AssignmentType {
 	private String varName = null;
+	// Frame slot of the referenced local variable, -1 if it must be looked up by name
+	private final int slot;
 	
 	public VarRefAssignment(String name) {
+		this(name, -1);
+	}
+	/**
+	 * Creates a new reference to the local variable in the specified frame slot.
+	 * References are resolved to slots by LinkedInstructions, which keeps its own resolved copies of the references it links.
+	 * @param name The name of the variable
+	 * @param frameSlot The frame slot of the variable, or -1 to look up the variable by name
+	 * @since 1.3
+	 */
+	public VarRefAssignment(String name, int frameSlot) {
 		varName = name;
+		slot = frameSlot;
 	}
 	
 	public boolean equals(RtflType val, Scope scope) throws RuntimeException {
@@ -26,11 +39,20 @@ public class VarRefAssignment implements AssignmentType {
 		return varName;
 	}
 	
+	/**
+	 * Returns the frame slot of the local variable this reference was resolved to
+	 * @return The frame slot, or -1 if the variable is looked up by name
+	 * @since 1.3
+	 */
+	public int slot() {
+		return slot;
+	}
+	
 	public String toString() {
 		return varName;
 	}
 	
 	public RtflType extractValue(Scope scope) throws RuntimeException {
-		return scope.varValue(varName);
+		return slot < 0 ? scope.varValue(varName) : scope.varValue(slot, varName);
 	}
 }
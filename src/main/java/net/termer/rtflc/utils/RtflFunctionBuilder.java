@@ -62,7 +62,7 @@ public class RtflFunctionBuilder {
 		}
 		
 		public RtflType run(RtflType[] args, RtflRuntime runtime, Scope scope) throws RuntimeException {
-			RtflType result = new NullType();
+			RtflType result = NullType.INSTANCE;
 			
 			// Fetch Java type arguments
 			ArrayList<Object> jargs = new ArrayList<Object>();
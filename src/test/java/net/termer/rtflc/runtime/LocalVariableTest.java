@@ -0,0 +1,114 @@
+package net.termer.rtflc.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import net.termer.rtflc.instructions.RtflInstruction;
+import net.termer.rtflc.producers.SourcecodeInstructionProducer;
+import net.termer.rtflc.utils.CacheInstructionConsumer;
+
+/**
+ * Tests resolving local variables to frame slots, both in the interpreter and in compiled functions
+ * @author termer
+ * @since 1.3
+ */
+public class LocalVariableTest {
+	// Runs code in a fresh runtime that never compiles functions, and in one that compiles them on their first call
+	private static Object run(String code) throws Exception {
+		Object interpreted = new RtflRuntime().importStandard().compileThreshold(0).execute(code).value();
+		Object compiled = new RtflRuntime().importStandard().compileThreshold(1).execute(code).value();
+		
+		assertEquals("Compiled code returned a different value than interpreted code", interpreted, compiled);
+		return interpreted;
+	}
+	// Parses code into instructions
+	private static RtflInstruction[] parse(String code) throws Exception {
+		CacheInstructionConsumer cache = new CacheInstructionConsumer();
+		SourcecodeInstructionProducer.produce("test", new ByteArrayInputStream(code.getBytes()), cache);
+		return cache.cache.toArray(new RtflInstruction[0]);
+	}
+	
+	@Test
+	public void shadowedLocalInBlock() throws Exception {
+		assertEquals(1, run(
+			"local x = 1\n" +
+			"if [true] {\n" +
+			"\tlocal x = 2\n" +
+			"}\n" +
+			"return x"
+		));
+	}
+	@Test
+	public void shadowedArgument() throws Exception {
+		assertEquals("21", run(
+			"func f(x) {\n" +
+			"\tlocal inner = 0\n" +
+			"\tif [true] {\n" +
+			"\t\tlocal x = 2\n" +
+			"\t\tinner = x\n" +
+			"\t}\n" +
+			"\treturn concat(to_string(inner), to_string(x))\n" +
+			"}\n" +
+			"return f(1)"
+		));
+	}
+	@Test
+	public void localsReadAfterLoop() throws Exception {
+		assertEquals("54", run(
+			"func f {\n" +
+			"\tlocal i = 0\n" +
+			"\tlocal last = 0\n" +
+			"\twhile [i < 5] {\n" +
+			"\t\tlocal tmp = i\n" +
+			"\t\tlast = tmp\n" +
+			"\t\ti = add(i, 1)\n" +
+			"\t}\n" +
+			"\treturn concat(to_string(i), to_string(last))\n" +
+			"}\n" +
+			"return f()"
+		));
+	}
+	@Test
+	public void positionalArgumentsWithNamedParameters() throws Exception {
+		assertEquals("1233", run(
+			"func f(a, b) {\n" +
+			"\treturn concat(to_string(a), to_string(arg2), to_string(arglen), to_string(arg3))\n" +
+			"}\n" +
+			"return f(1, 2, 3)"
+		));
+	}
+	@Test
+	public void asyncCapturesLocalsOfReturnedFunction() throws Exception {
+		assertEquals(15, run(
+			"func make(x) {\n" +
+			"\tlocal y = mul(x, 2)\n" +
+			"\tasync h {\n" +
+			"\t\tsleep(10)\n" +
+			"\t\treturn add(x, y)\n" +
+			"\t}\n" +
+			"\treturn h\n" +
+			"}\n" +
+			"local h = make(5)\n" +
+			"return await(h)"
+		));
+	}
+	@Test
+	public void relinkingDoesNotChangeSlots() throws Exception {
+		RtflInstruction[] insts = parse(
+			"local a = 1\n" +
+			"local x = 2\n" +
+			"return x"
+		);
+		RtflRuntime rt = new RtflRuntime().importStandard();
+		
+		assertEquals(2, rt.execute(insts).value());
+		
+		// Linking the same instructions as a function body resolves x to a different slot
+		new InstructionFunction(insts, new String[] { "x" });
+		
+		assertEquals(2, rt.execute(insts).value());
+	}
+}
@@ -0,0 +1,169 @@
+package net.termer.rtflc.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Test;
+
+import net.termer.rtflc.type.NullType;
+import net.termer.rtflc.type.StringType;
+
+/**
+ * Tests that returns unwind the blocks and functions containing them, both in the interpreter and in compiled functions
+ * @author termer
+ * @since 1.3
+ */
+public class ReturnTest {
+	// Runs code in a fresh runtime that never compiles functions, and in one that compiles them on their first call
+	private static Object run(String code) throws Exception {
+		Object interpreted = new RtflRuntime().importStandard().compileThreshold(0).execute(code).value();
+		Object compiled = new RtflRuntime().importStandard().compileThreshold(1).execute(code).value();
+		
+		assertEquals("Compiled code returned a different value than interpreted code", interpreted, compiled);
+		return interpreted;
+	}
+	// Writes code to a temporary file
+	private static File file(String code) throws Exception {
+		File file = File.createTempFile("rtfl", ".rtfl");
+		file.deleteOnExit();
+		
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(code.getBytes());
+		} finally {
+			out.close();
+		}
+		
+		return file;
+	}
+	
+	@Test
+	public void returnInsideIf() throws Exception {
+		assertEquals("bigsmall", run(
+			"func size(x) {\n" +
+			"\tif [x > 1] {\n" +
+			"\t\treturn \"big\"\n" +
+			"\t}\n" +
+			"\treturn \"small\"\n" +
+			"}\n" +
+			"return concat(size(2), size(0))"
+		));
+	}
+	@Test
+	public void returnInsideWhile() throws Exception {
+		assertEquals(3, run(
+			"def steps = 0\n" +
+			"func find {\n" +
+			"\tlocal i = 0\n" +
+			"\twhile [i < 10] {\n" +
+			"\t\tsteps = add(steps, 1)\n" +
+			"\t\tif [i = 3] {\n" +
+			"\t\t\treturn i\n" +
+			"\t\t}\n" +
+			"\t\ti = add(i, 1)\n" +
+			"\t}\n" +
+			"\treturn -1\n" +
+			"}\n" +
+			"local found = find()\n" +
+			"if [steps = 4] {\n" +
+			"\treturn found\n" +
+			"}\n" +
+			"return steps"
+		));
+	}
+	@Test
+	public void returnInsideTry() throws Exception {
+		assertEquals(7, run(
+			"func f {\n" +
+			"\terror e {\n" +
+			"\t\treturn 7\n" +
+			"\t}\n" +
+			"\treturn 8\n" +
+			"}\n" +
+			"return f()"
+		));
+	}
+	@Test
+	public void nestedLoops() throws Exception {
+		assertEquals(12, run(
+			"func count {\n" +
+			"\tlocal n = 0\n" +
+			"\tlocal i = 0\n" +
+			"\twhile [i < 3] {\n" +
+			"\t\tlocal j = 0\n" +
+			"\t\twhile [j < 4] {\n" +
+			"\t\t\tn = add(n, 1)\n" +
+			"\t\t\tj = add(j, 1)\n" +
+			"\t\t}\n" +
+			"\t\ti = add(i, 1)\n" +
+			"\t}\n" +
+			"\treturn n\n" +
+			"}\n" +
+			"return count()"
+		));
+	}
+	@Test
+	public void returnInsideNestedLoops() throws Exception {
+		assertEquals("12", run(
+			"func find {\n" +
+			"\tlocal i = 0\n" +
+			"\twhile [i < 3] {\n" +
+			"\t\tlocal j = 0\n" +
+			"\t\twhile [j < 4] {\n" +
+			"\t\t\tif [j = 2] {\n" +
+			"\t\t\t\tif [i = 1] {\n" +
+			"\t\t\t\t\treturn concat(to_string(i), to_string(j))\n" +
+			"\t\t\t\t}\n" +
+			"\t\t\t}\n" +
+			"\t\t\tj = add(j, 1)\n" +
+			"\t\t}\n" +
+			"\t\ti = add(i, 1)\n" +
+			"\t}\n" +
+			"}\n" +
+			"return find()"
+		));
+	}
+	@Test
+	public void functionWithoutReturn() throws Exception {
+		assertNull(run(
+			"func f {\n" +
+			"\tlocal x = 1\n" +
+			"}\n" +
+			"return f()"
+		));
+		assertTrue(new RtflRuntime().importStandard().execute("func f {\n}\nreturn f()") instanceof NullType);
+	}
+	@Test
+	public void topLevelReturnInFile() throws Exception {
+		File file = file(
+			"def before = 1\n" +
+			"return 5\n" +
+			"def after = 2\n"
+		);
+		RtflRuntime rt = new RtflRuntime().importStandard();
+		
+		assertEquals(5, rt.executeFile(file).value());
+		assertTrue(rt.globalVarables().containsKey("before"));
+		assertFalse(rt.globalVarables().containsKey("after"));
+	}
+	@Test
+	public void topLevelReturnInLoadedFile() throws Exception {
+		File file = file(
+			"def before = 1\n" +
+			"return 5\n" +
+			"def after = 2\n"
+		);
+		RtflRuntime rt = new RtflRuntime().importStandard();
+		
+		// The return only ends the loaded file, not the code that loaded it
+		rt.globalVarables().put("path", new StringType(file.getAbsolutePath()));
+		assertEquals("loaded", rt.execute("load(path)\nreturn \"loaded\"").value());
+		assertTrue(rt.globalVarables().containsKey("before"));
+		assertFalse(rt.globalVarables().containsKey("after"));
+	}
+}